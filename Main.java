@@ -2,9 +2,43 @@
 //2.meal menu
 //3.blood group
 
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -15,6 +49,25 @@ import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.*;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.zip.CRC32;
 import java.text.SimpleDateFormat;
 
 // User Class for Authentication
@@ -44,6 +97,10 @@ class Student implements Serializable {
     private int fatherMonthlyIncome;
     private String roomNumber;
     private String department;
+    // Set while the student waits for a seat; cleared once one is assigned
+    private boolean seatRequested;
+    // Room numbers, or the start of one for a whole block, best first
+    private List<String> roomPreferences = new ArrayList<>();
 
     public Student(String id, String name, String contact, int distance, int merit, int fatherMonthlyIncome, String department) {
         this.id = id;
@@ -68,6 +125,10 @@ class Student implements Serializable {
     public void setRoomNumber(String roomNumber) { this.roomNumber = roomNumber; }
     public String getDepartment() { return department; }
     public void setDepartment(String department) { this.department = department; }
+    public boolean isSeatRequested() { return seatRequested; }
+    public void setSeatRequested(boolean seatRequested) { this.seatRequested = seatRequested; }
+    public List<String> getRoomPreferences() { return roomPreferences; }
+    public void setRoomPreferences(List<String> roomPreferences) { this.roomPreferences = new ArrayList<>(roomPreferences); }
 }
 
 // Room Class
@@ -154,116 +215,296 @@ class Appointment implements Serializable {
 
 // HallManagementSystem Class
 class HallManagementSystem {
-    private List<User> users;
-    private List<Student> students;
-    private List<Room> rooms;
+    // Keyed by username, id and room number, so lookups and deletes are O(1)
+    private KeyedList<User> users;
+    private KeyedList<Student> students;
+    private KeyedList<Room> rooms;
     private List<Complaint> complaints;
     private List<Appointment> appointments;
-    private List<Runnable> dashboardUpdaters;
+    private StudentRecordIndex<Complaint> complaintsByStudent;
+    private StudentRecordIndex<Appointment> appointmentsByStudent;
+    // Storage keys records by id, so complaint and appointment ids must stay unique; these
+    // also serve the per-event lookups of the table models
+    private Map<String, Complaint> complaintsById = new HashMap<>();
+    private Map<String, Appointment> appointmentsById = new HashMap<>();
+    private int lastComplaintNumber;
+    private int lastAppointmentNumber;
+    private RoomCapacityIndex roomCapacity = new RoomCapacityIndex();
+    private SeatWaitlist waitlist = new SeatWaitlist();
+    private HallEventBus events = new HallEventBus();
+    private HallStorage storage;
+    // What the storage writes from; updated together with the live lists
+    private HallSnapshots snapshots;
+    // Loading runs in the background: usersReady completes first so login can proceed,
+    // loaded completes once every collection is in memory
+    private CompletableFuture<Void> usersReady;
+    private CompletableFuture<Void> loaded;
+    private LoadTimings loadTimings;
+    // Load timings and persistence stats are always available from the getters; with
+    // -Dhall.stats=true they are also printed once loading ends and at exit
+    private static final boolean PRINT_STATS = Boolean.getBoolean("hall.stats");
 
     public HallManagementSystem() {
-        users = new ArrayList<>();
-        students = new ArrayList<>();
-        rooms = new ArrayList<>();
+        users = new KeyedList<>(User::getUsername);
+        students = new KeyedList<>(Student::getId);
+        rooms = new KeyedList<>(Room::getRoomNumber);
         complaints = new ArrayList<>();
         appointments = new ArrayList<>();
-        dashboardUpdaters = new ArrayList<>();
+        complaintsByStudent = new StudentRecordIndex<>(Complaint::getStudentId, Complaint::isResolved);
+        appointmentsByStudent = new StudentRecordIndex<>(Appointment::getStudentId, Appointment::isApproved);
+        snapshots = new HallSnapshots();
+        storage = HallStorage.create(snapshots);
+        if (PRINT_STATS) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                    System.out.println("Hall persistence: " + storage.getStats()), "hall-stats"));
+        }
+        loadTimings = new LoadTimings();
         loadData();
     }
 
     public User authenticate(String username, String password) {
-        return users.stream()
-                .filter(u -> u.getUsername().equals(username) && u.getPassword().equals(password))
-                .findFirst()
-                .orElse(null);
+        usersReady.join();
+        User user = users.getByKey(username);
+        return user != null && user.getPassword().equals(password) ? user : null;
+    }
+
+    public boolean userExists(String username) {
+        usersReady.join();
+        return users.containsKey(username);
     }
 
     public void addUser(User user) {
+        awaitLoaded();
+        if (users.containsKey(user.getUsername())) throw new IllegalArgumentException("User already exists");
         users.add(user);
-        saveData();
+        persist(user);
     }
 
     public void addStudent(Student student) {
+        awaitLoaded();
+        if (students.containsKey(student.getId())) throw new IllegalArgumentException("Student already exists");
         students.add(student);
-        saveData();
-        notifyDashboard();
+        storage.batch(() -> {
+            persist(student);
+            if (SeatWaitlist.isWaiting(student)) {
+                waitlist.add(student);
+                fillVacancies();
+            }
+        });
+        publish(HallEventType.STUDENT_ADDED, student.getId());
     }
 
-    public void addDashboardUpdater(Runnable updater) {
-        dashboardUpdaters.add(updater);
+    // The listener is called on the event dispatch thread with every event of the given types
+    // published since its last call; a burst of changes arrives as one list. It stays subscribed
+    // until the returned handle is closed or nothing references the handle any more.
+    public HallSubscription subscribe(Set<HallEventType> types, HallEventListener listener) {
+        return events.subscribe(types, listener);
     }
 
-    private void notifyDashboard() {
-        for (Runnable updater : dashboardUpdaters) {
-            updater.run();
-        }
+    public int getListenerCount() { return events.getListenerCount(); }
+
+    private void publish(HallEventType type, String key) {
+        events.publish(new HallEvent(type, key, null));
+    }
+
+    private void publish(HallEventType type, String studentId, String roomNumber) {
+        events.publish(new HallEvent(type, studentId, roomNumber));
     }
 
     public void updateStudent(String id, Student updatedStudent) {
-        for (int i = 0; i < students.size(); i++) {
-            if (students.get(i).getId().equals(id)) {
-                students.set(i, updatedStudent);
-                saveData();
-                notifyDashboard();
-                return;
-            }
+        awaitLoaded();
+        int index = students.indexOfKey(id);
+        if (index < 0) throw new IllegalArgumentException("Student not found");
+        waitlist.remove(students.get(index));
+        students.set(index, updatedStudent);
+        if (SeatWaitlist.isWaiting(updatedStudent)) {
+            waitlist.add(updatedStudent);
+        }
+        persist(updatedStudent);
+        if (!id.equals(updatedStudent.getId())) {
+            persistDelete(HallCollection.STUDENTS, id);
+            publish(HallEventType.STUDENT_DELETED, id);
+            publish(HallEventType.STUDENT_ADDED, updatedStudent.getId());
+        } else {
+            publish(HallEventType.STUDENT_CHANGED, id);
         }
-        throw new IllegalArgumentException("Student not found");
     }
 
     public void deleteStudent(String id) {
-        Student student = getStudent(id);
-        if (student != null && student.getRoomNumber() != null) {
-            unassignSeat(id);
-        }
-        students.removeIf(s -> s.getId().equals(id));
-        users.removeIf(u -> u.getUsername().equals(id));
-        saveData();
-        notifyDashboard();
+        awaitLoaded();
+        storage.batch(() -> {
+            Student student = getStudent(id);
+            if (student != null) {
+                waitlist.remove(student);
+            }
+            if (student != null && student.getRoomNumber() != null) {
+                unassignSeat(id);
+            }
+            students.removeByKey(id);
+            users.removeByKey(id);
+            persistDelete(HallCollection.STUDENTS, id);
+            persistDelete(HallCollection.USERS, id);
+        });
+        publish(HallEventType.STUDENT_DELETED, id);
     }
 
     public Student getStudent(String id) {
-        return students.stream().filter(s -> s.getId().equals(id)).findFirst().orElse(null);
+        awaitLoaded();
+        return students.getByKey(id);
     }
 
-    public List<Student> getStudents() { return students; }
+    public List<Student> getStudents() {
+        awaitLoaded();
+        return students;
+    }
 
     public void addRoom(Room room) {
+        awaitLoaded();
+        if (rooms.containsKey(room.getRoomNumber())) throw new IllegalArgumentException("Room already exists");
         rooms.add(room);
-        saveData();
-        notifyDashboard();
+        roomCapacity.put(room);
+        storage.batch(() -> {
+            persist(room);
+            fillVacancies();
+        });
+        publish(HallEventType.ROOM_ADDED, room.getRoomNumber());
     }
 
     public void deleteRoom(String roomNumber) {
+        awaitLoaded();
         Room room = getRoom(roomNumber);
         if (room != null && !room.getOccupants().isEmpty()) {
             throw new IllegalStateException("Cannot delete room with occupants");
         }
-        rooms.removeIf(r -> r.getRoomNumber().equals(roomNumber));
-        saveData();
-        notifyDashboard();
+        rooms.removeByKey(roomNumber);
+        roomCapacity.remove(roomNumber);
+        persistDelete(HallCollection.ROOMS, roomNumber);
+        publish(HallEventType.ROOM_DELETED, roomNumber);
     }
 
     public Room getRoom(String roomNumber) {
-        return rooms.stream().filter(r -> r.getRoomNumber().equals(roomNumber)).findFirst().orElse(null);
+        awaitLoaded();
+        return rooms.getByKey(roomNumber);
+    }
+
+    public List<Room> getRooms() {
+        awaitLoaded();
+        return rooms;
+    }
+
+    // The first room in list order with at least the given number of free seats; null if none
+    public Room findRoomWithFreeSeats(int seats) {
+        awaitLoaded();
+        String roomNumber = roomCapacity.findRoom(seats);
+        return roomNumber != null ? rooms.getByKey(roomNumber) : null;
+    }
+
+    public List<Room> getRoomsWithFreeSeats(int seats) {
+        awaitLoaded();
+        List<Room> result = new ArrayList<>();
+        for (String roomNumber : roomCapacity.roomsWithFreeSeats(seats)) {
+            result.add(rooms.getByKey(roomNumber));
+        }
+        return result;
+    }
+
+    public int getTotalSeatCount() {
+        awaitLoaded();
+        return roomCapacity.getTotalSeats();
+    }
+
+    public int getOccupiedSeatCount() {
+        awaitLoaded();
+        return roomCapacity.getOccupiedSeats();
+    }
+
+    public int getOccupiedRoomCount() {
+        awaitLoaded();
+        return roomCapacity.getOccupiedRooms();
+    }
+
+    public int getAvailableRoomCount() {
+        awaitLoaded();
+        return roomCapacity.getAvailableRooms();
+    }
+
+    public HallStats getHallStats() {
+        awaitLoaded();
+        return new HallStats(students.size(), rooms.size(), roomCapacity.getOccupiedRooms(),
+                roomCapacity.getTotalSeats(), roomCapacity.getOccupiedSeats(), complaintsByStudent.getOpenCount(),
+                appointmentsByStudent.getOpenCount(), waitlist.size());
     }
 
-    public List<Room> getRooms() { return rooms; }
+    // Applies a whole plan as one change: every assignment is checked before any is made
+    // and the changes go to storage as one batch
+    public AllocationReport applySeatAssignments(AllocationPlan plan) {
+        awaitLoaded();
+        Set<String> planned = new HashSet<>();
+        Map<String, Integer> seatsTaken = new HashMap<>();
+        for (SeatAssignment assignment : plan.getAssignments()) {
+            Student student = students.getByKey(assignment.getStudentId());
+            Room room = rooms.getByKey(assignment.getRoomNumber());
+            if (student == null) throw new IllegalArgumentException("Student not found: " + assignment.getStudentId());
+            if (room == null) throw new IllegalArgumentException("Room not found: " + assignment.getRoomNumber());
+            if (student.getRoomNumber() != null || !planned.add(student.getId())) {
+                throw new IllegalStateException("Student already assigned to a room: " + student.getId());
+            }
+            int taken = seatsTaken.merge(room.getRoomNumber(), 1, Integer::sum);
+            if (room.getOccupants().size() + taken > room.getCapacity()) {
+                throw new IllegalStateException("Room is full: " + room.getRoomNumber());
+            }
+        }
+
+        long applyStart = System.nanoTime();
+        List<Student> placed = new ArrayList<>();
+        Set<Room> touched = new LinkedHashSet<>();
+        for (SeatAssignment assignment : plan.getAssignments()) {
+            Student student = students.getByKey(assignment.getStudentId());
+            Room room = rooms.getByKey(assignment.getRoomNumber());
+            waitlist.remove(student);
+            room.addOccupant(student.getId());
+            student.setRoomNumber(room.getRoomNumber());
+            student.setSeatRequested(false);
+            placed.add(student);
+            touched.add(room);
+        }
+        touched.forEach(roomCapacity::put);
+
+        long persistStart = System.nanoTime();
+        storage.batch(() -> {
+            placed.forEach(this::persist);
+            touched.forEach(this::persist);
+        });
+        storage.flush();
+        long end = System.nanoTime();
+        for (SeatAssignment assignment : plan.getAssignments()) {
+            publish(HallEventType.SEAT_ASSIGNED, assignment.getStudentId(), assignment.getRoomNumber());
+        }
+        return new AllocationReport(plan, (persistStart - applyStart) / 1_000_000, (end - persistStart) / 1_000_000);
+    }
 
     public void assignSeat(String studentId, String roomNumber) {
+        awaitLoaded();
         Student student = getStudent(studentId);
         Room room = getRoom(roomNumber);
         if (student == null) throw new IllegalArgumentException("Student not found");
         if (room == null) throw new IllegalArgumentException("Room not found");
         if (!room.isAvailable()) throw new IllegalStateException("Room is full");
         if (student.getRoomNumber() != null) throw new IllegalStateException("Student already assigned to a room");
+        waitlist.remove(student);
         room.addOccupant(studentId);
         student.setRoomNumber(roomNumber);
-        saveData();
-        notifyDashboard();
+        student.setSeatRequested(false);
+        roomCapacity.put(room);
+        storage.batch(() -> {
+            persist(student);
+            persist(room);
+        });
+        publish(HallEventType.SEAT_ASSIGNED, studentId, roomNumber);
     }
 
     public void unassignSeat(String studentId) {
+        awaitLoaded();
         Student student = getStudent(studentId);
         if (student == null) throw new IllegalArgumentException("Student not found");
         String roomNumber = student.getRoomNumber();
@@ -272,129 +513,399 @@ class HallManagementSystem {
             if (room != null) {
                 room.removeOccupant(studentId);
                 student.setRoomNumber(null);
-                saveData();
-                notifyDashboard();
+                roomCapacity.put(room);
+                publish(HallEventType.SEAT_RELEASED, studentId, roomNumber);
+                storage.batch(() -> {
+                    persist(student);
+                    persist(room);
+                    fillVacancies();
+                });
+            }
+        }
+    }
+
+    // Puts the student on the waitlist, and seats them straight away if a room has space;
+    // returns the room they got, or null while they wait
+    public String requestSeat(String studentId) {
+        awaitLoaded();
+        Student student = getStudent(studentId);
+        if (student == null) throw new IllegalArgumentException("Student not found");
+        if (student.getRoomNumber() != null) throw new IllegalStateException("Student already assigned to a room");
+        if (!student.isSeatRequested()) {
+            student.setSeatRequested(true);
+            waitlist.add(student);
+            publish(HallEventType.SEAT_REQUESTED, studentId);
+            storage.batch(() -> {
+                persist(student);
+                fillVacancies();
+            });
+        }
+        return student.getRoomNumber();
+    }
+
+    // 1 for the student who gets the next free seat, 0 if the student is not waiting
+    public int getWaitlistPosition(String studentId) {
+        awaitLoaded();
+        Student student = getStudent(studentId);
+        return student != null ? waitlist.positionOf(student) : 0;
+    }
+
+    public int getWaitlistSize() {
+        awaitLoaded();
+        return waitlist.size();
+    }
+
+    public void setRoomPreferences(String studentId, List<String> preferences) {
+        awaitLoaded();
+        Student student = getStudent(studentId);
+        if (student == null) throw new IllegalArgumentException("Student not found");
+        if (preferences.size() > PreferenceAllocator.MAX_PREFERENCES) {
+            throw new IllegalArgumentException("At most " + PreferenceAllocator.MAX_PREFERENCES + " room preferences");
+        }
+        student.setRoomPreferences(preferences);
+        persist(student);
+        publish(HallEventType.STUDENT_CHANGED, studentId);
+    }
+
+    // Seats waitlisted students, highest priority first, for as long as a room has a free seat.
+    // Each placement is one waitlist poll and one capacity index lookup, so only the students
+    // who can actually be placed are touched.
+    private void fillVacancies() {
+        while (!waitlist.isEmpty()) {
+            String roomNumber = roomCapacity.findRoom(1);
+            if (roomNumber == null) {
+                break;
+            }
+            Student student = waitlist.poll();
+            Room room = rooms.getByKey(roomNumber);
+            room.addOccupant(student.getId());
+            student.setRoomNumber(roomNumber);
+            student.setSeatRequested(false);
+            roomCapacity.put(room);
+            storage.batch(() -> {
+                persist(student);
+                persist(room);
+            });
+            publish(HallEventType.SEAT_ASSIGNED, student.getId(), roomNumber);
+        }
+    }
+
+    // Ids count up from the highest ever loaded, so one freed by a delete is never handed out again
+    public String nextComplaintId() {
+        awaitLoaded();
+        String id;
+        do {
+            id = "C" + (++lastComplaintNumber);
+        } while (complaintsById.containsKey(id));
+        return id;
+    }
+
+    public String nextAppointmentId() {
+        awaitLoaded();
+        String id;
+        do {
+            id = "A" + (++lastAppointmentNumber);
+        } while (appointmentsById.containsKey(id));
+        return id;
+    }
+
+    // The number after the prefix in the highest id of that form, or 0 if there is none
+    private static int highestNumber(Collection<String> ids, String prefix) {
+        int highest = 0;
+        for (String id : ids) {
+            if (id.startsWith(prefix)) {
+                try {
+                    highest = Math.max(highest, Integer.parseInt(id.substring(prefix.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours; it cannot clash with a generated id
+                }
             }
         }
+        return highest;
     }
 
     public void submitComplaint(Complaint complaint) {
+        awaitLoaded();
+        if (complaintsById.containsKey(complaint.getComplaintId())) {
+            throw new IllegalArgumentException("Complaint already exists");
+        }
+        complaintsById.put(complaint.getComplaintId(), complaint);
         complaints.add(complaint);
-        saveData();
-        notifyDashboard();
+        complaintsByStudent.add(complaint);
+        persist(complaint);
+        publish(HallEventType.COMPLAINT_SUBMITTED, complaint.getComplaintId());
     }
 
-    public List<Complaint> getComplaints() { return complaints; }
+    public void resolveComplaint(String complaintId) {
+        awaitLoaded();
+        Complaint c = complaintsById.get(complaintId);
+        if (c == null) throw new IllegalArgumentException("Complaint not found");
+        c.setResolved(true);
+        complaintsByStudent.statusChanged(c);
+        persist(c);
+        publish(HallEventType.COMPLAINT_RESOLVED, complaintId);
+    }
+
+    public List<Complaint> getComplaints() {
+        awaitLoaded();
+        return complaints;
+    }
+
+    // Looked up by id; null if there is none
+    public Complaint getComplaint(String complaintId) {
+        awaitLoaded();
+        return complaintsById.get(complaintId);
+    }
 
     public List<Complaint> getStudentComplaints(String studentId) {
-        return complaints.stream()
-                .filter(c -> c.getStudentId().equals(studentId))
-                .collect(Collectors.toList());
+        awaitLoaded();
+        return complaintsByStudent.get(studentId);
+    }
+
+    public List<Complaint> getStudentComplaints(String studentId, boolean resolved) {
+        awaitLoaded();
+        return complaintsByStudent.get(studentId, resolved);
     }
 
     public void submitAppointmentRequest(Appointment appointment) {
+        awaitLoaded();
+        if (appointmentsById.containsKey(appointment.getAppointmentId())) {
+            throw new IllegalArgumentException("Appointment already exists");
+        }
+        appointmentsById.put(appointment.getAppointmentId(), appointment);
         appointments.add(appointment);
-        saveData();
-        notifyDashboard();
+        appointmentsByStudent.add(appointment);
+        persist(appointment);
+        publish(HallEventType.APPOINTMENT_REQUESTED, appointment.getAppointmentId());
     }
 
     public void approveAppointment(String appointmentId) {
-        for (Appointment a : appointments) {
-            if (a.getAppointmentId().equals(appointmentId)) {
-                a.setApproved(true);
-                saveData();
-                notifyDashboard();
-                return;
-            }
-        }
-        throw new IllegalArgumentException("Appointment not found");
+        awaitLoaded();
+        Appointment a = appointmentsById.get(appointmentId);
+        if (a == null) throw new IllegalArgumentException("Appointment not found");
+        a.setApproved(true);
+        appointmentsByStudent.statusChanged(a);
+        persist(a);
+        publish(HallEventType.APPOINTMENT_APPROVED, appointmentId);
     }
 
     public void rejectAppointment(String appointmentId) {
-        appointments.removeIf(a -> a.getAppointmentId().equals(appointmentId));
-        saveData();
-        notifyDashboard();
+        awaitLoaded();
+        Appointment rejected = appointmentsById.remove(appointmentId);
+        if (rejected == null) {
+            return;
+        }
+        appointments.remove(rejected);
+        appointmentsByStudent.remove(rejected);
+        persistDelete(HallCollection.APPOINTMENTS, appointmentId);
+        publish(HallEventType.APPOINTMENT_REJECTED, appointmentId);
+    }
+
+    public List<Appointment> getAppointments() {
+        awaitLoaded();
+        return appointments;
     }
 
-    public List<Appointment> getAppointments() { return appointments; }
+    // Looked up by id; null if there is none
+    public Appointment getAppointment(String appointmentId) {
+        awaitLoaded();
+        return appointmentsById.get(appointmentId);
+    }
 
     public List<Appointment> getStudentAppointments(String studentId) {
-        return appointments.stream()
-                .filter(a -> a.getStudentId().equals(studentId))
-                .collect(Collectors.toList());
+        awaitLoaded();
+        return appointmentsByStudent.get(studentId);
     }
 
-    private void saveData() {
-        try {
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("users.dat"))) {
-                oos.writeObject(users);
-            }
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("students.dat"))) {
-                oos.writeObject(students);
-            }
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("rooms.dat"))) {
-                oos.writeObject(rooms);
-            }
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("complaints.dat"))) {
-                oos.writeObject(complaints);
-            }
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("appointments.dat"))) {
-                oos.writeObject(appointments);
-            }
-        } catch (IOException e) {
-            System.err.println("Error saving data: " + e.getMessage());
-        }
+    public List<Appointment> getStudentAppointments(String studentId, boolean approved) {
+        awaitLoaded();
+        return appointmentsByStudent.get(studentId, approved);
+    }
+
+    // Writes out everything changed so far in one go; what that means depends on the storage
+    public void checkpoint() {
+        awaitLoaded();
+        storage.checkpoint();
+    }
+
+    // Returns once all changes made so far are written out; mutators themselves never wait on disk
+    public void flush() {
+        storage.flush();
+    }
+
+    public void awaitDurable() {
+        storage.awaitDurable();
     }
 
+    public PersistenceStats getPersistenceStats() { return storage.getStats(); }
+
+    // Immutable copies of the collections as of now, safe to read from any thread; taking them
+    // costs nothing as they share structure with the versions the storage writes from
+    public Map<HallCollection, List<?>> getSnapshot(HallCollection... collections) {
+        awaitLoaded();
+        return snapshots.current(collections);
+    }
+
+    public long getSnapshotVersion() {
+        return snapshots.getVersion();
+    }
+
+    // Publishes the new version of the entity before the storage sees the change
+    private void persist(Object entity) {
+        snapshots.put(entity);
+        storage.upsert(entity);
+    }
+
+    private void persistDelete(HallCollection collection, String key) {
+        snapshots.remove(collection, key);
+        storage.delete(collection, key);
+    }
+
+    // Reads the five collections concurrently, off the calling thread
     @SuppressWarnings("unchecked")
     private void loadData() {
-        try {
-            File userFile = new File("users.dat");
-            if (userFile.exists()) {
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(userFile))) {
-                    users = (List<User>) ois.readObject();
-                }
+        ExecutorService pool = Executors.newFixedThreadPool(HallCollection.values().length, runnable -> {
+            Thread thread = new Thread(runnable, "hall-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<HallCollection, CompletableFuture<List<?>>> stored = new EnumMap<>(HallCollection.class);
+        for (HallCollection collection : HallCollection.values()) {
+            stored.put(collection, CompletableFuture.supplyAsync(() -> loadCollection(collection), pool));
+        }
+
+        usersReady = stored.get(HallCollection.USERS).thenAccept(loadedUsers -> {
+            if (loadedUsers != null) {
+                users = new KeyedList<>((List<User>) loadedUsers, User::getUsername);
             } else {
                 users.add(new User("admin", "admin123", "admin"));
                 users.add(new User("S001", "pass123", "student"));
                 users.add(new User("S002", "pass123", "student"));
             }
-            File studentFile = new File("students.dat");
-            if (studentFile.exists()) {
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(studentFile))) {
-                    students = (List<Student>) ois.readObject();
-                }
-            } else {
-                addStudent(new Student("S001", "John Doe", "123456789", 50, 500, 50000, "CSE"));
-                addStudent(new Student("S002", "Jane Smith", "987654321", 30, 300, 30000, "EEE"));
+            loadTimings.phase("users ready");
+        }).exceptionally(error -> {
+            System.err.println("Error loading users: " + causeOf(error).getMessage());
+            return null;
+        });
+        loaded = CompletableFuture.allOf(usersReady, stored.get(HallCollection.STUDENTS),
+                stored.get(HallCollection.ROOMS), stored.get(HallCollection.COMPLAINTS),
+                stored.get(HallCollection.APPOINTMENTS)).thenRun(() -> {
+            List<?> loadedUsers = stored.get(HallCollection.USERS).join();
+            List<?> loadedStudents = stored.get(HallCollection.STUDENTS).join();
+            List<?> loadedRooms = stored.get(HallCollection.ROOMS).join();
+            List<?> loadedComplaints = stored.get(HallCollection.COMPLAINTS).join();
+            List<?> loadedAppointments = stored.get(HallCollection.APPOINTMENTS).join();
+            if (loadedStudents != null) {
+                students = new KeyedList<>((List<Student>) loadedStudents, Student::getId);
             }
-            File roomFile = new File("rooms.dat");
-            if (roomFile.exists()) {
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(roomFile))) {
-                    rooms = (List<Room>) ois.readObject();
-                }
-            } else {
-                addRoom(new Room("R101", 2));
-                addRoom(new Room("R102", 2));
+            if (loadedRooms != null) {
+                rooms = new KeyedList<>((List<Room>) loadedRooms, Room::getRoomNumber);
             }
-            File complaintFile = new File("complaints.dat");
-            if (complaintFile.exists()) {
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(complaintFile))) {
-                    complaints = (List<Complaint>) ois.readObject();
-                }
+            if (loadedComplaints != null) {
+                complaints = (List<Complaint>) loadedComplaints;
             }
-            File appointmentFile = new File("appointments.dat");
-            if (appointmentFile.exists()) {
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(appointmentFile))) {
-                    appointments = (List<Appointment>) ois.readObject();
-                }
+            if (loadedAppointments != null) {
+                appointments = (List<Appointment>) loadedAppointments;
+            }
+            roomCapacity.rebuild(rooms);
+            waitlist.rebuild(students);
+            complaintsByStudent.rebuild(complaints);
+            appointmentsByStudent.rebuild(appointments);
+            complaints.forEach(c -> complaintsById.put(c.getComplaintId(), c));
+            appointments.forEach(a -> appointmentsById.put(a.getAppointmentId(), a));
+            lastComplaintNumber = highestNumber(complaintsById.keySet(), "C");
+            lastAppointmentNumber = highestNumber(appointmentsById.keySet(), "A");
+            snapshots.reset(HallCollection.USERS, loadedUsers != null ? users : Collections.emptyList());
+            snapshots.reset(HallCollection.STUDENTS, students);
+            snapshots.reset(HallCollection.ROOMS, rooms);
+            snapshots.reset(HallCollection.COMPLAINTS, complaints);
+            snapshots.reset(HallCollection.APPOINTMENTS, appointments);
+            // Sample data is only written once every collection is in place, as a write may checkpoint
+            if (loadedUsers == null) {
+                users.forEach(this::persist);
+            }
+            if (loadedStudents == null) {
+                seedStudent(new Student("S001", "John Doe", "123456789", 50, 500, 50000, "CSE"));
+                seedStudent(new Student("S002", "Jane Smith", "987654321", 30, 300, 30000, "EEE"));
+            }
+            if (loadedRooms == null) {
+                seedRoom(new Room("R101", 2));
+                seedRoom(new Room("R102", 2));
             }
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Error loading data: " + e.getMessage());
+            loadTimings.phase("all loaded");
+            if (PRINT_STATS) {
+                System.out.println("Hall data loaded: " + loadTimings);
+            }
+        }).exceptionally(error -> {
+            // A failed load must not leave every later call throwing; carry on with no data, but
+            // never let a checkpoint write that over what is stored
+            System.err.println("Error loading data: " + causeOf(error).getMessage());
+            for (HallCollection collection : HallCollection.values()) {
+                storage.markUnreadable(collection);
+            }
+            startEmpty();
+            return null;
+        });
+        loaded.whenComplete((ignored, error) -> pool.shutdown());
+    }
+
+    private void startEmpty() {
+        students = new KeyedList<>(Student::getId);
+        rooms = new KeyedList<>(Room::getRoomNumber);
+        complaints = new ArrayList<>();
+        appointments = new ArrayList<>();
+        complaintsById.clear();
+        appointmentsById.clear();
+        roomCapacity.rebuild(rooms);
+        waitlist.rebuild(students);
+        complaintsByStudent.rebuild(complaints);
+        appointmentsByStudent.rebuild(appointments);
+        snapshots.reset(HallCollection.USERS, users);
+        snapshots.reset(HallCollection.STUDENTS, students);
+        snapshots.reset(HallCollection.ROOMS, rooms);
+        snapshots.reset(HallCollection.COMPLAINTS, complaints);
+        snapshots.reset(HallCollection.APPOINTMENTS, appointments);
+    }
+
+    private static Throwable causeOf(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    // Returns null for a collection the storage has never held; it is then seeded with sample data
+    private List<?> loadCollection(HallCollection collection) {
+        String name = collection.name().toLowerCase();
+        long start = System.nanoTime();
+        try {
+            return storage.load(collection);
+        } catch (IOException | RuntimeException e) {
+            // An empty list rather than null, so a read error never gets it replaced by sample data
+            System.err.println("Error loading " + name + ": " + e.getMessage());
+            return new ArrayList<>();
+        } finally {
+            loadTimings.record(name, start);
         }
     }
 
+    private void seedStudent(Student student) {
+        students.add(student);
+        persist(student);
+    }
+
+    private void seedRoom(Room room) {
+        rooms.add(room);
+        roomCapacity.put(room);
+        persist(room);
+    }
+
+    // Blocks until loading has finished; every public method except authenticate starts with this
+    public void awaitLoaded() {
+        loaded.join();
+    }
+
+    public LoadTimings getLoadTimings() { return loadTimings; }
+
     public void exportData(String filename) {
+        awaitLoaded();
         try (PrintWriter writer = new PrintWriter(new FileWriter(filename))) {
             writer.println("Students:");
             for (Student s : students) {
@@ -417,32 +928,3906 @@ class HallManagementSystem {
                 writer.println(String.format("%s,%s,%s,%s,%s,%b",
                         a.getAppointmentId(), a.getStudentId(), a.getAuthority(), a.getDate(), a.getTime(), a.isApproved()));
             }
-        } catch (IOException e) {
-            System.err.println("Error exporting data: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Error exporting data: " + e.getMessage());
+        }
+    }
+}
+
+// Keyed List
+// An ArrayList with a key -> position index. Removing an element moves the last one into its
+// place, so lookup, replace and remove by key are all O(1). Order is insertion order until
+// the first removal.
+class KeyedList<T> extends AbstractList<T> implements RandomAccess {
+    private List<T> items = new ArrayList<>();
+    private Map<String, Integer> positions = new HashMap<>();
+    private Function<? super T, String> keyOf;
+
+    public KeyedList(Function<? super T, String> keyOf) {
+        this.keyOf = keyOf;
+    }
+
+    // Later duplicates of a key replace earlier ones, so data saved before the index existed still loads
+    public KeyedList(Collection<? extends T> values, Function<? super T, String> keyOf) {
+        this(keyOf);
+        for (T value : values) {
+            Integer index = positions.get(keyOf.apply(value));
+            if (index != null) {
+                items.set(index, value);
+            } else {
+                add(value);
+            }
+        }
+    }
+
+    @Override
+    public T get(int index) { return items.get(index); }
+
+    @Override
+    public int size() { return items.size(); }
+
+    public T getByKey(String key) {
+        Integer index = positions.get(key);
+        return index != null ? items.get(index) : null;
+    }
+
+    public boolean containsKey(String key) {
+        return positions.containsKey(key);
+    }
+
+    public int indexOfKey(String key) {
+        Integer index = positions.get(key);
+        return index != null ? index : -1;
+    }
+
+    // Only appending is supported; the index would otherwise have to shift
+    @Override
+    public void add(int index, T value) {
+        if (index != items.size()) {
+            throw new UnsupportedOperationException("KeyedList only appends");
+        }
+        String key = keyOf.apply(value);
+        if (positions.containsKey(key)) {
+            throw new IllegalArgumentException("Duplicate key: " + key);
+        }
+        positions.put(key, items.size());
+        items.add(value);
+        modCount++;
+    }
+
+    @Override
+    public T set(int index, T value) {
+        String key = keyOf.apply(value);
+        String oldKey = keyOf.apply(items.get(index));
+        if (!key.equals(oldKey)) {
+            if (positions.containsKey(key)) {
+                throw new IllegalArgumentException("Duplicate key: " + key);
+            }
+            positions.remove(oldKey);
+            positions.put(key, index);
+        }
+        return items.set(index, value);
+    }
+
+    @Override
+    public T remove(int index) {
+        T removed = items.get(index);
+        T last = items.remove(items.size() - 1);
+        positions.remove(keyOf.apply(removed));
+        if (index < items.size()) {
+            items.set(index, last);
+            positions.put(keyOf.apply(last), index);
+        }
+        modCount++;
+        return removed;
+    }
+
+    public T removeByKey(String key) {
+        Integer index = positions.get(key);
+        return index != null ? remove((int) index) : null;
+    }
+
+    @Override
+    public void clear() {
+        items.clear();
+        positions.clear();
+        modCount++;
+    }
+}
+
+// Student Record Index
+// Complaints or appointments grouped by student, each group also split into done (resolved,
+// approved) and open, so a student's views cost time proportional to their own records. Running
+// totals of both partitions are kept alongside.
+class StudentRecordIndex<T> {
+    private Map<String, List<T>> all = new HashMap<>();
+    private Map<String, List<T>> done = new HashMap<>();
+    private Map<String, List<T>> open = new HashMap<>();
+    private int count;
+    private int doneCount;
+    private Function<? super T, String> studentOf;
+    private Predicate<? super T> isDone;
+
+    public StudentRecordIndex(Function<? super T, String> studentOf, Predicate<? super T> isDone) {
+        this.studentOf = studentOf;
+        this.isDone = isDone;
+    }
+
+    public void rebuild(List<T> records) {
+        all.clear();
+        done.clear();
+        open.clear();
+        count = 0;
+        doneCount = 0;
+        records.forEach(this::add);
+    }
+
+    public void add(T record) {
+        String studentId = studentOf.apply(record);
+        all.computeIfAbsent(studentId, s -> new ArrayList<>()).add(record);
+        count++;
+        addToPartition(studentId, record);
+    }
+
+    public void remove(T record) {
+        String studentId = studentOf.apply(record);
+        if (removeFrom(all, studentId, record)) {
+            count--;
+        }
+        if (removeFrom(done, studentId, record)) {
+            doneCount--;
+        }
+        removeFrom(open, studentId, record);
+    }
+
+    // Call after the record's status changed, to move it to the other partition
+    public void statusChanged(T record) {
+        String studentId = studentOf.apply(record);
+        if (removeFrom(done, studentId, record)) {
+            doneCount--;
+        }
+        removeFrom(open, studentId, record);
+        addToPartition(studentId, record);
+    }
+
+    public int getCount() { return count; }
+    public int getDoneCount() { return doneCount; }
+    public int getOpenCount() { return count - doneCount; }
+
+    private void addToPartition(String studentId, T record) {
+        if (isDone.test(record)) {
+            done.computeIfAbsent(studentId, s -> new ArrayList<>()).add(record);
+            doneCount++;
+        } else {
+            open.computeIfAbsent(studentId, s -> new ArrayList<>()).add(record);
+        }
+    }
+
+    public List<T> get(String studentId) {
+        return new ArrayList<>(all.getOrDefault(studentId, Collections.emptyList()));
+    }
+
+    public List<T> get(String studentId, boolean wantDone) {
+        return new ArrayList<>((wantDone ? done : open).getOrDefault(studentId, Collections.emptyList()));
+    }
+
+    private boolean removeFrom(Map<String, List<T>> groups, String studentId, T record) {
+        List<T> group = groups.get(studentId);
+        if (group == null || !group.removeIf(r -> r == record)) {
+            return false;
+        }
+        if (group.isEmpty()) {
+            groups.remove(studentId);
+        }
+        return true;
+    }
+}
+
+// Room Capacity Index
+// The rooms that have a free seat, in the order they were added, plus running seat and room
+// counts. A room keeps its place while its occupants change, so lookups see rooms in the same
+// order as a scan of the room list and pick the same first-fit room.
+class RoomCapacityIndex {
+    // Rooms with a free seat, by the order they were added in
+    private TreeMap<Integer, String> openRooms = new TreeMap<>();
+    // Capacity, occupied seats and place in that order per room, as of the last put
+    private Map<String, int[]> seats = new HashMap<>();
+    private int nextOrder;
+    private int totalSeats;
+    private int totalOccupied;
+    private int occupiedRooms;
+
+    public void rebuild(List<Room> rooms) {
+        openRooms.clear();
+        seats.clear();
+        nextOrder = 0;
+        totalSeats = 0;
+        totalOccupied = 0;
+        occupiedRooms = 0;
+        rooms.forEach(this::put);
+    }
+
+    // Adds the room at the end, or refreshes it in place after its occupants changed
+    public void put(Room room) {
+        String roomNumber = room.getRoomNumber();
+        int[] previous = seats.get(roomNumber);
+        int order = previous != null ? previous[2] : nextOrder++;
+        remove(roomNumber);
+        int capacity = room.getCapacity();
+        int occupied = room.getOccupants().size();
+        if (occupied < capacity) {
+            openRooms.put(order, roomNumber);
+        }
+        seats.put(roomNumber, new int[] {capacity, occupied, order});
+        totalSeats += capacity;
+        totalOccupied += occupied;
+        if (occupied > 0) {
+            occupiedRooms++;
+        }
+    }
+
+    public void remove(String roomNumber) {
+        int[] room = seats.remove(roomNumber);
+        if (room == null) {
+            return;
+        }
+        openRooms.remove(room[2]);
+        totalSeats -= room[0];
+        totalOccupied -= room[1];
+        if (room[1] > 0) {
+            occupiedRooms--;
+        }
+    }
+
+    // The first room in list order with the given number of seats free; null if there is none.
+    // A single seat is found in O(log n); more seats scan the rooms that have any free.
+    public String findRoom(int seats) {
+        for (String roomNumber : openRooms.values()) {
+            if (freeSeats(roomNumber) >= seats) {
+                return roomNumber;
+            }
+        }
+        return null;
+    }
+
+    public List<String> roomsWithFreeSeats(int seats) {
+        List<String> result = new ArrayList<>();
+        for (String roomNumber : openRooms.values()) {
+            if (freeSeats(roomNumber) >= seats) {
+                result.add(roomNumber);
+            }
+        }
+        return result;
+    }
+
+    private int freeSeats(String roomNumber) {
+        int[] room = seats.get(roomNumber);
+        return room[0] - room[1];
+    }
+
+    public int getTotalSeats() { return totalSeats; }
+    public int getOccupiedSeats() { return totalOccupied; }
+    public int getOccupiedRooms() { return occupiedRooms; }
+    public int getAvailableRooms() { return openRooms.size(); }
+}
+
+// Seat Waitlist
+// Students who asked for a seat and have none yet, highest allocation priority first. Only the
+// seatRequested flag on each student is stored, so the waitlist is rebuilt from it on load.
+class SeatWaitlist {
+    private TreeSet<Student> waiting = new TreeSet<>(PriorityOrder.COMPARATOR.thenComparing(Student::getId));
+
+    public static boolean isWaiting(Student student) {
+        return student.isSeatRequested() && student.getRoomNumber() == null;
+    }
+
+    public void rebuild(Collection<Student> students) {
+        waiting.clear();
+        for (Student student : students) {
+            if (isWaiting(student)) {
+                waiting.add(student);
+            }
+        }
+    }
+
+    public void add(Student student) {
+        waiting.add(student);
+    }
+
+    public void remove(Student student) {
+        waiting.remove(student);
+    }
+
+    public Student poll() {
+        return waiting.pollFirst();
+    }
+
+    public boolean isEmpty() { return waiting.isEmpty(); }
+
+    public int size() { return waiting.size(); }
+
+    // 1 for the student who gets the next free seat, 0 if the student is not waiting
+    public int positionOf(Student student) {
+        return waiting.contains(student) ? waiting.headSet(student).size() + 1 : 0;
+    }
+}
+
+// Hall Stats
+// The dashboard figures as of one moment. Every one is kept up to date by the mutators, so
+// taking them costs the same however many students, rooms or complaints there are.
+class HallStats {
+    private int totalStudents;
+    private int totalRooms;
+    private int occupiedRooms;
+    private int totalSeats;
+    private int occupiedSeats;
+    private int openComplaints;
+    private int pendingAppointments;
+    private int waitlistedStudents;
+
+    public HallStats(int totalStudents, int totalRooms, int occupiedRooms, int totalSeats, int occupiedSeats,
+                     int openComplaints, int pendingAppointments, int waitlistedStudents) {
+        this.totalStudents = totalStudents;
+        this.totalRooms = totalRooms;
+        this.occupiedRooms = occupiedRooms;
+        this.totalSeats = totalSeats;
+        this.occupiedSeats = occupiedSeats;
+        this.openComplaints = openComplaints;
+        this.pendingAppointments = pendingAppointments;
+        this.waitlistedStudents = waitlistedStudents;
+    }
+
+    public int getTotalStudents() { return totalStudents; }
+    public int getTotalRooms() { return totalRooms; }
+    public int getOccupiedRooms() { return occupiedRooms; }
+    public int getTotalSeats() { return totalSeats; }
+    public int getOccupiedSeats() { return occupiedSeats; }
+    public int getOpenComplaints() { return openComplaints; }
+    public int getPendingAppointments() { return pendingAppointments; }
+    public int getWaitlistedStudents() { return waitlistedStudents; }
+}
+
+// Hall Event Types
+// What a HallManagementSystem change event is about; listeners subscribe to the types they show
+enum HallEventType {
+    STUDENT_ADDED,
+    STUDENT_CHANGED,
+    STUDENT_DELETED,
+    SEAT_REQUESTED,
+    SEAT_ASSIGNED,
+    SEAT_RELEASED,
+    ROOM_ADDED,
+    ROOM_DELETED,
+    COMPLAINT_SUBMITTED,
+    COMPLAINT_RESOLVED,
+    APPOINTMENT_REQUESTED,
+    APPOINTMENT_APPROVED,
+    APPOINTMENT_REJECTED
+}
+
+// Hall Event
+// One change made by HallManagementSystem. The key is the student id, room number, complaint id
+// or appointment id the type names; seat events carry the student id and the room as well.
+class HallEvent {
+    private HallEventType type;
+    private String key;
+    private String roomNumber;
+
+    public HallEvent(HallEventType type, String key, String roomNumber) {
+        this.type = type;
+        this.key = key;
+        this.roomNumber = roomNumber;
+    }
+
+    public HallEventType getType() { return type; }
+    public String getKey() { return key; }
+    public String getRoomNumber() { return roomNumber; }
+
+    @Override
+    public String toString() {
+        return type + " " + key + (roomNumber != null ? " -> " + roomNumber : "");
+    }
+}
+
+interface HallEventListener {
+    void onEvents(List<HallEvent> events);
+}
+
+// Hall Subscription
+// The handle HallEventBus.subscribe returns. The bus holds it weakly and the handle holds the
+// listener, so a subscription lasts exactly as long as its owner keeps the handle; close() ends
+// it straight away and lets go of the listener.
+class HallSubscription implements AutoCloseable {
+    private Set<HallEventType> types;
+    private volatile HallEventListener listener;
+
+    public HallSubscription(Set<HallEventType> types, HallEventListener listener) {
+        if (types.isEmpty()) throw new IllegalArgumentException("No event types to subscribe to");
+        this.types = EnumSet.copyOf(types);
+        this.listener = listener;
+    }
+
+    public boolean isOpen() { return listener != null; }
+
+    @Override
+    public void close() {
+        listener = null;
+    }
+
+    public void deliver(List<HallEvent> batch) {
+        HallEventListener target = listener;
+        if (target == null) {
+            return;
+        }
+        List<HallEvent> matching = new ArrayList<>();
+        for (HallEvent event : batch) {
+            if (types.contains(event.getType())) {
+                matching.add(event);
+            }
+        }
+        if (!matching.isEmpty()) {
+            target.onEvents(Collections.unmodifiableList(matching));
+        }
+    }
+}
+
+// Hall Event Bus
+// Queues events as mutators publish them and hands them to subscribers later on the event
+// dispatch thread. Only the first event of a burst schedules a delivery, so everything published
+// before the dispatch thread gets to it, such as a whole seat allocation, arrives as one call.
+class HallEventBus {
+    private List<WeakReference<HallSubscription>> subscriptions = new CopyOnWriteArrayList<>();
+    private List<HallEvent> pending = new ArrayList<>();
+    private boolean deliveryScheduled;
+
+    public HallSubscription subscribe(Set<HallEventType> types, HallEventListener listener) {
+        HallSubscription subscription = new HallSubscription(types, listener);
+        removeEnded();
+        subscriptions.add(new WeakReference<>(subscription));
+        return subscription;
+    }
+
+    // Subscriptions that are still open and whose handle is still referenced
+    public int getListenerCount() {
+        removeEnded();
+        return subscriptions.size();
+    }
+
+    public void publish(HallEvent event) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            pending.add(event);
+            if (deliveryScheduled) {
+                return;
+            }
+            deliveryScheduled = true;
+        }
+        SwingUtilities.invokeLater(this::deliver);
+    }
+
+    private void deliver() {
+        List<HallEvent> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<>();
+            deliveryScheduled = false;
+        }
+        for (WeakReference<HallSubscription> reference : subscriptions) {
+            HallSubscription subscription = reference.get();
+            if (subscription == null) {
+                continue;
+            }
+            try {
+                subscription.deliver(batch);
+            } catch (RuntimeException e) {
+                System.err.println("Error delivering hall events: " + e.getMessage());
+            }
+        }
+        removeEnded();
+    }
+
+    private void removeEnded() {
+        subscriptions.removeIf(reference -> {
+            HallSubscription subscription = reference.get();
+            return subscription == null || !subscription.isOpen();
+        });
+    }
+}
+
+// Hall Storage
+// Where HallManagementSystem keeps its collections. Entities are keyed as in HallDataCodec.keyOf,
+// and load may be called for several collections at once. Selected with hall.storage:
+//   files (default) = .dat snapshots plus the change journal
+//   mapped          = the same, with students and rooms in memory-mapped stores
+//   jdbc            = one table per collection in the database at hall.jdbcUrl
+interface HallStorage {
+    // Everything stored for the collection, or null if it has never been stored
+    List<?> load(HallCollection collection) throws IOException;
+
+    void upsert(Object entity);
+
+    void delete(HallCollection collection, String key);
+
+    // Applies the changes made inside as one unit
+    void batch(Runnable changes);
+
+    // What is stored for the collection did not make it into memory, so it must never be
+    // replaced by the in-memory version; changes are still kept, on top of it
+    void markUnreadable(HallCollection collection);
+
+    void checkpoint();
+
+    void flush();
+
+    void awaitDurable();
+
+    PersistenceStats getStats();
+
+    static HallStorage create(SnapshotSource source) {
+        String kind = System.getProperty("hall.storage", "files");
+        if ("jdbc".equals(kind)) {
+            String url = System.getProperty("hall.jdbcUrl", "jdbc:h2:./hall");
+            try {
+                return new JdbcHallStorage(url);
+            } catch (SQLException e) {
+                System.err.println("Error opening " + url + ", using .dat files: " + e.getMessage());
+            }
+        }
+        return new FileHallStorage(source, "mapped".equals(kind));
+    }
+}
+
+// Snapshot Source
+// An immutable point-in-time view of a collection, safe to read from any thread
+interface SnapshotSource {
+    List<?> current(HallCollection collection);
+}
+
+// Hall Snapshots
+// Immutable, versioned copies of every collection, published by HallManagementSystem after each
+// change. A change copies the one entity it touched and shares everything else with the previous
+// version, so a checkpoint can take the current version in O(1) and encode it on another thread
+// while mutators carry on with the live lists.
+class HallSnapshots implements SnapshotSource {
+    private Map<HallCollection, PersistentList<Object>> versions = new EnumMap<>(HallCollection.class);
+    // Position of every key in the latest version; only touched under the lock
+    private Map<HallCollection, Map<String, Integer>> positions = new EnumMap<>(HallCollection.class);
+    private long version;
+
+    public HallSnapshots() {
+        for (HallCollection collection : HallCollection.values()) {
+            versions.put(collection, PersistentList.empty());
+            positions.put(collection, new HashMap<>());
+        }
+    }
+
+    public synchronized void reset(HallCollection collection, List<?> entities) {
+        List<Object> copies = new ArrayList<>(entities.size());
+        Map<String, Integer> keys = new HashMap<>();
+        for (Object entity : entities) {
+            keys.put(HallDataCodec.keyOf(entity), copies.size());
+            copies.add(copyOf(entity));
+        }
+        versions.put(collection, PersistentList.of(copies));
+        positions.put(collection, keys);
+        version++;
+    }
+
+    public synchronized void put(Object entity) {
+        HallCollection collection = HallCollection.of(entity);
+        Map<String, Integer> keys = positions.get(collection);
+        PersistentList<Object> current = versions.get(collection);
+        Integer index = keys.get(HallDataCodec.keyOf(entity));
+        if (index != null) {
+            versions.put(collection, current.with(index, copyOf(entity)));
+        } else {
+            keys.put(HallDataCodec.keyOf(entity), current.size());
+            versions.put(collection, current.plus(copyOf(entity)));
+        }
+        version++;
+    }
+
+    // Moves the last entity into the gap, like KeyedList, so both keep the same order
+    public synchronized void remove(HallCollection collection, String key) {
+        Map<String, Integer> keys = positions.get(collection);
+        Integer index = keys.remove(key);
+        if (index == null) {
+            return;
+        }
+        PersistentList<Object> current = versions.get(collection);
+        Object last = current.get(current.size() - 1);
+        if (index < current.size() - 1) {
+            current = current.with(index, last);
+            keys.put(HallDataCodec.keyOf(last), index);
+        }
+        versions.put(collection, current.withoutLast());
+        version++;
+    }
+
+    @Override
+    public synchronized List<?> current(HallCollection collection) {
+        return versions.get(collection);
+    }
+
+    // Several collections as of one moment
+    public synchronized Map<HallCollection, List<?>> current(HallCollection... collections) {
+        Map<HallCollection, List<?>> taken = new EnumMap<>(HallCollection.class);
+        for (HallCollection collection : collections) {
+            taken.put(collection, versions.get(collection));
+        }
+        return taken;
+    }
+
+    // Bumped by every change, so two reads can tell whether anything happened in between
+    public synchronized long getVersion() { return version; }
+
+    // Live entities are mutated in place, so a snapshot has to hold its own copy
+    private static Object copyOf(Object entity) {
+        if (entity instanceof Student) {
+            Student s = (Student) entity;
+            Student copy = new Student(s.getId(), s.getName(), s.getContact(), s.getDistance(), s.getMerit(),
+                    s.getFatherMonthlyIncome(), s.getDepartment());
+            copy.setRoomNumber(s.getRoomNumber());
+            copy.setSeatRequested(s.isSeatRequested());
+            copy.setRoomPreferences(s.getRoomPreferences());
+            return copy;
+        }
+        if (entity instanceof Room) {
+            Room r = (Room) entity;
+            Room copy = new Room(r.getRoomNumber(), r.getCapacity());
+            copy.getOccupants().addAll(r.getOccupants());
+            return copy;
+        }
+        if (entity instanceof Complaint) {
+            Complaint c = (Complaint) entity;
+            Complaint copy = new Complaint(c.getComplaintId(), c.getStudentId(), c.getDescription());
+            copy.setResolved(c.isResolved());
+            return copy;
+        }
+        if (entity instanceof Appointment) {
+            Appointment a = (Appointment) entity;
+            Appointment copy = new Appointment(a.getAppointmentId(), a.getStudentId(), a.getAuthority(),
+                    a.getDate(), a.getTime());
+            copy.setApproved(a.isApproved());
+            return copy;
+        }
+        return entity; // users never change once created
+    }
+}
+
+// Persistent List
+// An immutable list stored as a 32-way trie. with(), plus() and withoutLast() copy the one node
+// per level on the path to the element they touch, so an update costs O(log32 n) whatever the
+// size; every other node is shared with the list they came from.
+class PersistentList<T> extends AbstractList<T> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final PersistentList<Object> EMPTY = new PersistentList<>(new Object[WIDTH], 0, 0);
+
+    private Object[] root;
+    // BITS times the number of levels above the leaves
+    private int shift;
+    private int size;
+
+    private PersistentList(Object[] root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentList<T> empty() {
+        return (PersistentList<T>) EMPTY;
+    }
+
+    public static <T> PersistentList<T> of(List<? extends T> values) {
+        PersistentList<T> list = empty();
+        for (T value : values) {
+            list = list.plus(value);
+        }
+        return list;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        checkIndex(index);
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return (T) node[index & MASK];
+    }
+
+    @Override
+    public int size() { return size; }
+
+    public PersistentList<T> with(int index, T value) {
+        checkIndex(index);
+        return new PersistentList<>(set(root, shift, index, value), shift, size);
+    }
+
+    public PersistentList<T> plus(T value) {
+        if (size == 1 << (shift + BITS)) {
+            // Root is full: the old root becomes the first child of a new, taller one
+            Object[] grown = new Object[WIDTH];
+            grown[0] = root;
+            grown[1] = path(shift, value);
+            return new PersistentList<>(grown, shift + BITS, size + 1);
+        }
+        return new PersistentList<>(append(root, shift, size, value), shift, size + 1);
+    }
+
+    public PersistentList<T> withoutLast() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("Index: -1, Size: 0");
+        }
+        if (size == 1) {
+            return empty();
+        }
+        Object[] shrunk = removeLast(root, shift, size - 1);
+        if (shift > 0 && shrunk[1] == null) {
+            // Everything left fits under the first child, so drop a level
+            return new PersistentList<>((Object[]) shrunk[0], shift - BITS, size - 1);
+        }
+        return new PersistentList<>(shrunk, shift, size - 1);
+    }
+
+    // Calls action, in ascending order, with every index below both sizes where the two lists hold
+    // different elements. Subtrees the lists share are skipped whole, so comparing a list with one
+    // made from it by a few changes costs time in proportion to those changes, not to the size.
+    public void forEachDifference(PersistentList<T> other, IntConsumer action) {
+        Object[] mine = root;
+        Object[] theirs = other.root;
+        int level = Math.min(shift, other.shift);
+        // The taller trie keeps the shorter one's indices under its first child
+        for (int s = shift; s > level; s -= BITS) {
+            mine = (Object[]) mine[0];
+        }
+        for (int s = other.shift; s > level; s -= BITS) {
+            theirs = (Object[]) theirs[0];
+        }
+        compare(mine, theirs, level, 0, Math.min(size, other.size), action);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private static void compare(Object[] mine, Object[] theirs, int level, int offset, int limit, IntConsumer action) {
+        if (mine == theirs) {
+            return;
+        }
+        for (int slot = 0; slot < WIDTH; slot++) {
+            int start = offset + (slot << level);
+            if (start >= limit) {
+                return;
+            }
+            if (level == 0) {
+                if (mine[slot] != theirs[slot]) {
+                    action.accept(start);
+                }
+            } else {
+                compare((Object[]) mine[slot], (Object[]) theirs[slot], level - BITS, start, limit, action);
+            }
+        }
+    }
+
+    private static Object[] set(Object[] node, int level, int index, Object value) {
+        Object[] copy = node.clone();
+        int slot = (index >>> level) & MASK;
+        copy[slot] = level == 0 ? value : set((Object[]) node[slot], level - BITS, index, value);
+        return copy;
+    }
+
+    private static Object[] append(Object[] node, int level, int index, Object value) {
+        Object[] copy = node.clone();
+        int slot = (index >>> level) & MASK;
+        if (level == 0) {
+            copy[slot] = value;
+        } else if (node[slot] == null) {
+            copy[slot] = path(level - BITS, value);
+        } else {
+            copy[slot] = append((Object[]) node[slot], level - BITS, index, value);
+        }
+        return copy;
+    }
+
+    // A fresh branch holding just one value, in its first slot at every level
+    private static Object[] path(int level, Object value) {
+        Object[] node = new Object[WIDTH];
+        node[0] = level == 0 ? value : path(level - BITS, value);
+        return node;
+    }
+
+    // Returns null once the node would be left empty, so the parent can drop it
+    private static Object[] removeLast(Object[] node, int level, int index) {
+        int slot = (index >>> level) & MASK;
+        Object[] child = level == 0 ? null : removeLast((Object[]) node[slot], level - BITS, index);
+        if (child == null && slot == 0) {
+            return null;
+        }
+        Object[] copy = node.clone();
+        copy[slot] = child;
+        return copy;
+    }
+}
+
+// File Hall Storage
+// Changes are appended to the journal; a checkpoint rewrites the snapshots of the collections
+// that changed and then truncates the journal. Loading replays the journal over the snapshots.
+class FileHallStorage implements HallStorage {
+    // A checkpoint runs once the journal holds hall.checkpointRecords records, or
+    // hall.checkpointIntervalMs after the last one if anything changed. Shorter intervals mean
+    // faster recovery but more snapshot writes.
+    private static final int CHECKPOINT_RECORDS = Integer.getInteger("hall.checkpointRecords", 1000);
+    private static final long CHECKPOINT_INTERVAL_MS = Long.getLong("hall.checkpointIntervalMs", 60_000);
+    // While a collection cannot be read the journal is kept whole; past hall.journalAlertBytes,
+    // and again each time it doubles, that is reported on stderr
+    private static final long JOURNAL_ALERT_BYTES = Long.getLong("hall.journalAlertBytes", 64L << 20);
+
+    private SnapshotSource source;
+    private ChangeJournal journal;
+    private DirtyTracker dirty = new DirtyTracker();
+    private PersistenceStats stats;
+    // Set in mapped mode: students and rooms then live in fixed-width mapped stores
+    private MappedStudentStore studentStore;
+    private MappedRoomStore roomStore;
+    // Which of the .dat file and the mapped store the last checkpoint of students and of rooms
+    // wrote ("dat" or "map"), so a start in either mode reads the newer one instead of a copy
+    // the other mode left behind
+    private static final File FORMAT_FILE = new File("hall-format.properties");
+    private Properties formats = new Properties();
+    // Mapped stores holding an older copy than the .dat; their next checkpoint rewrites them whole
+    private Set<HallCollection> staleStores = Collections.synchronizedSet(EnumSet.noneOf(HallCollection.class));
+    // Collections whose file failed to load or verify; checkpoints never overwrite these
+    private Set<HallCollection> unreadable = Collections.synchronizedSet(EnumSet.noneOf(HallCollection.class));
+    // Touched only on the persister thread
+    private boolean journalKeptReported;
+    private long journalAlertBytes = JOURNAL_ALERT_BYTES;
+    private List<JournalRecord> journalRecords;
+    private int batchDepth;
+    private long lastCheckpointMillis = System.currentTimeMillis();
+
+    public FileHallStorage(SnapshotSource source, boolean mapped) {
+        this.source = source;
+        DurabilityMode mode = DurabilityMode.fromSystemProperties();
+        stats = new PersistenceStats(mode.getLabel());
+        journal = new ChangeJournal(new File("journal.log"), mode, stats);
+        if (FORMAT_FILE.exists()) {
+            try (InputStream in = new FileInputStream(FORMAT_FILE)) {
+                formats.load(in);
+            } catch (IOException e) {
+                System.err.println("Error reading " + FORMAT_FILE + ": " + e.getMessage());
+            }
+        }
+        if (mapped) {
+            try {
+                studentStore = new MappedStudentStore(new File("students.map"), new File("students.heap"));
+                roomStore = new MappedRoomStore(new File("rooms.map"), new File("rooms.heap"));
+            } catch (IOException e) {
+                System.err.println("Error opening mapped storage, using .dat files: " + e.getMessage());
+                studentStore = null;
+                roomStore = null;
+            }
+        }
+    }
+
+    @Override
+    public void markUnreadable(HallCollection collection) {
+        unreadable.add(collection);
+    }
+
+    @Override
+    public List<?> load(HallCollection collection) throws IOException {
+        List<Object> entities;
+        try {
+            entities = readStored(collection);
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            unreadable.add(collection);
+            throw new IOException(e.getMessage(), e);
+        }
+        Map<String, Integer> positions = null;
+        for (JournalRecord record : journalRecords()) {
+            if (ChangeJournal.collectionOf(record.getType()) == collection) {
+                if (entities == null) {
+                    entities = new ArrayList<>();
+                }
+                if (positions == null) {
+                    positions = new HashMap<>();
+                    for (int i = 0; i < entities.size(); i++) {
+                        positions.put(HallDataCodec.keyOf(entities.get(i)), i);
+                    }
+                }
+                applyRecord(entities, positions, collection, record);
+            }
+        }
+        return entities;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object> readStored(HallCollection collection) throws IOException, ClassNotFoundException {
+        MappedRecordStore<?> store = collection == HallCollection.STUDENTS ? studentStore
+                : collection == HallCollection.ROOMS ? roomStore : null;
+        File file = new File(collection.getFileName());
+        boolean mapNewer = mapIsNewer(collection, file);
+        if (store != null && !store.isEmpty() && (mapNewer || !file.exists())) {
+            return new ArrayList<>(store.loadAll());
+        }
+        if (store == null && mapNewer) {
+            // Last written in mapped mode: read the store once, and the next checkpoint brings the .dat up to date
+            List<Object> entities = readMapped(collection);
+            entities.forEach(e -> dirty.mark(collection, HallDataCodec.keyOf(e)));
+            return entities;
+        }
+        if (!file.exists()) {
+            return null;
+        }
+        List<Object> entities = (List<Object>) readSnapshot(collection, file);
+        if (store != null) {
+            // First start in mapped mode, or the .dat moved on since: the next checkpoint copies it into the store
+            if (!store.isEmpty()) {
+                staleStores.add(collection);
+            }
+            entities.forEach(e -> dirty.mark(collection, HallDataCodec.keyOf(e)));
+        }
+        return entities;
+    }
+
+    // Without a record of the last format written, as with data from before it was kept, the
+    // file written last wins
+    private boolean mapIsNewer(HallCollection collection, File file) {
+        if (collection != HallCollection.STUDENTS && collection != HallCollection.ROOMS) {
+            return false;
+        }
+        File map = mapFile(collection);
+        if (!map.exists()) {
+            return false;
+        }
+        String format = formats.getProperty(formatKey(collection));
+        if (format != null) {
+            return format.equals("map");
+        }
+        return !file.exists() || map.lastModified() > file.lastModified();
+    }
+
+    private List<Object> readMapped(HallCollection collection) throws IOException {
+        String name = collection.name().toLowerCase();
+        MappedRecordStore<?> store = collection == HallCollection.STUDENTS
+                ? new MappedStudentStore(mapFile(collection), new File(name + ".heap"))
+                : new MappedRoomStore(mapFile(collection), new File(name + ".heap"));
+        try {
+            return new ArrayList<>(store.loadAll());
+        } finally {
+            store.close();
+        }
+    }
+
+    private static File mapFile(HallCollection collection) {
+        return new File(collection.name().toLowerCase() + ".map");
+    }
+
+    private static String formatKey(HallCollection collection) {
+        return collection.name().toLowerCase();
+    }
+
+    // Called once the checkpoint's writes are on disk
+    private void recordFormat(HallCollection collection, String format) throws IOException {
+        if (format.equals(formats.getProperty(formatKey(collection)))) {
+            return;
+        }
+        formats.setProperty(formatKey(collection), format);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        formats.store(bytes, "Format of the last checkpoint of each collection");
+        AtomicFileWriter.write(FORMAT_FILE.toPath(), bytes.toByteArray());
+    }
+
+    // Reads a snapshot written by HallDataCodec, or a list written by Java serialization before it
+    private List<?> readSnapshot(HallCollection collection, File file) throws IOException, ClassNotFoundException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        if (HallDataCodec.isSnapshot(bytes)) {
+            return HallDataCodec.decodeSnapshot(collection, bytes);
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return (List<?>) ois.readObject();
+        }
+    }
+
+    // The journal is read once, by whichever collection gets to it first
+    private synchronized List<JournalRecord> journalRecords() {
+        if (journalRecords == null) {
+            try {
+                journalRecords = journal.readAll();
+            } catch (IOException e) {
+                System.err.println("Error reading journal: " + e.getMessage());
+                journalRecords = new ArrayList<>();
+            }
+        }
+        return journalRecords;
+    }
+
+    // Replays a journal record on top of the loaded snapshot. Records carry the whole entity,
+    // so applying one that the snapshot already reflects is harmless. Deletes move the last
+    // entity into the gap, the same way KeyedList does, so the order comes back as it was.
+    private void applyRecord(List<Object> entities, Map<String, Integer> positions, HallCollection collection,
+                             JournalRecord record) {
+        String key = record.getKey();
+        // The snapshot does not contain this change yet, so the next checkpoint must rewrite it
+        dirty.mark(collection, key);
+        Integer index = positions.get(key);
+        if (record.getEntity() == null) {
+            if (index != null) {
+                positions.remove(key);
+                Object last = entities.remove(entities.size() - 1);
+                if (index < entities.size()) {
+                    entities.set(index, last);
+                    positions.put(HallDataCodec.keyOf(last), index);
+                }
+            }
+        } else if (index != null) {
+            entities.set(index, record.getEntity());
+        } else {
+            positions.put(key, entities.size());
+            entities.add(record.getEntity());
+        }
+    }
+
+    @Override
+    public void upsert(Object entity) {
+        HallCollection collection = HallCollection.of(entity);
+        journal.appendPut(collection, entity);
+        dirty.mark(collection, HallDataCodec.keyOf(entity));
+        checkpointIfNeeded();
+    }
+
+    @Override
+    public void delete(HallCollection collection, String key) {
+        journal.appendDelete(collection, key);
+        dirty.mark(collection, key);
+        checkpointIfNeeded();
+    }
+
+    // Journal records are already coalesced by the persister; a batch holds back checkpoints
+    // so none runs between two halves of one change, and in sync mode waits once for the disk
+    // at the end instead of after every record
+    @Override
+    public void batch(Runnable changes) {
+        batchDepth++;
+        journal.beginBatch();
+        try {
+            changes.run();
+        } finally {
+            batchDepth--;
+            journal.endBatch();
+        }
+        checkpointIfNeeded();
+    }
+
+    private void checkpointIfNeeded() {
+        if (batchDepth > 0) {
+            return;
+        }
+        int records = journal.getRecordCount();
+        if (records >= CHECKPOINT_RECORDS
+                || (records > 0 && System.currentTimeMillis() - lastCheckpointMillis >= CHECKPOINT_INTERVAL_MS)) {
+            scheduleCheckpoint();
+        }
+    }
+
+    // Writes fresh snapshots, after which the journal records are no longer needed
+    @Override
+    public void checkpoint() {
+        journal.awaitDurable(scheduleCheckpoint());
+    }
+
+    // Takes the current version of every changed collection and hands it to the persister
+    // thread, which encodes and writes it behind the records already queued. The caller never
+    // waits for the disk.
+    private long scheduleCheckpoint() {
+        Map<HallCollection, Set<String>> changed = dirty.drain();
+        Map<HallCollection, List<?>> versions = new EnumMap<>(HallCollection.class);
+        for (HallCollection collection : changed.keySet()) {
+            versions.put(collection, source.current(collection));
+        }
+        lastCheckpointMillis = System.currentTimeMillis();
+        return journal.scheduleCheckpoint(() -> {
+            if (!saveData(changed, versions)) {
+                dirty.restore(changed);
+                return false;
+            }
+            return unreadable.isEmpty() || keepJournal();
+        });
+    }
+
+    // The records of a collection that failed to load were never applied, so the journal is the
+    // only copy of them and must not be cut. Always returns false.
+    private boolean keepJournal() {
+        if (!journalKeptReported) {
+            journalKeptReported = true;
+            System.err.println("Keeping the journal until " + unreadableFiles()
+                    + " can be read again; repair or restore it and restart");
+        }
+        long length = journal.getLength();
+        if (length >= journalAlertBytes) {
+            System.err.println("Journal has grown to " + (length >> 20) + " MB and cannot be checkpointed until "
+                    + unreadableFiles() + " can be read");
+            while (journalAlertBytes <= length) {
+                journalAlertBytes *= 2;
+            }
+        }
+        return false;
+    }
+
+    private String unreadableFiles() {
+        StringJoiner files = new StringJoiner(", ");
+        synchronized (unreadable) {
+            unreadable.forEach(collection -> files.add(collection.getFileName()));
+        }
+        return files.toString();
+    }
+
+    @Override
+    public void flush() {
+        journal.flush();
+    }
+
+    @Override
+    public void awaitDurable() {
+        journal.awaitDurable();
+    }
+
+    @Override
+    public PersistenceStats getStats() { return stats; }
+
+    // Rewrites only the .dat files whose collection changed since the last checkpoint. A file
+    // that could not be read at startup is left alone; the journal keeps its changes.
+    @SuppressWarnings("unchecked")
+    private boolean saveData(Map<HallCollection, Set<String>> changed, Map<HallCollection, List<?>> versions) {
+        try {
+            long bytes = 0;
+            int files = 0;
+            for (HallCollection collection : changed.keySet()) {
+                if (unreadable.contains(collection)) {
+                    continue;
+                }
+                List<?> current = versions.get(collection);
+                boolean rewrite = staleStores.contains(collection);
+                if (collection == HallCollection.STUDENTS && studentStore != null) {
+                    bytes += rewrite ? studentStore.rewrite((List<Student>) current)
+                            : studentStore.write(changed.get(collection), (List<Student>) current);
+                    staleStores.remove(collection);
+                    recordFormat(collection, "map");
+                } else if (collection == HallCollection.ROOMS && roomStore != null) {
+                    bytes += rewrite ? roomStore.rewrite((List<Room>) current)
+                            : roomStore.write(changed.get(collection), (List<Room>) current);
+                    staleStores.remove(collection);
+                    recordFormat(collection, "map");
+                } else {
+                    byte[] snapshot = HallDataCodec.encodeSnapshot(collection, current);
+                    AtomicFileWriter.write(Paths.get(collection.getFileName()), snapshot);
+                    bytes += snapshot.length;
+                    if (collection == HallCollection.STUDENTS || collection == HallCollection.ROOMS) {
+                        recordFormat(collection, "dat");
+                    }
+                }
+                files++;
+            }
+            stats.recordCheckpoint(files, bytes);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving data: " + e.getMessage());
+            return false;
+        }
+    }
+}
+
+// JDBC Hall Storage
+// One table per collection, one row per entity, in the database at hall.jdbcUrl. A change is a
+// single-row update, so there is no journal or checkpoint. A row that cannot be written throws
+// IllegalStateException; inside a batch it also rolls the whole batch back. The first time a
+// collection is loaded, whatever the .dat files and journal hold for it is copied in, so a hall
+// switched to jdbc keeps its data. The driver (H2, SQLite, ...) only has to be on the runtime
+// classpath.
+class JdbcHallStorage implements HallStorage {
+    private Connection connection;
+    private Map<String, PreparedStatement> statements = new HashMap<>();
+    private PersistenceStats stats = new PersistenceStats("jdbc");
+    private int batchDepth;
+    private int batchRows;
+    private long batchStart;
+    // The first row that failed in the open batch
+    private SQLException batchFailure;
+    // Reads the file storage once, for collections the database has not held yet
+    private FileHallStorage fileStorage;
+
+    public JdbcHallStorage(String url) throws SQLException {
+        connection = DriverManager.getConnection(url);
+        try (Statement statement = connection.createStatement()) {
+            // Collections listed here have been stored before and are not seeded again
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS hall_collections (name VARCHAR(32) PRIMARY KEY)");
+            for (HallCollection collection : HallCollection.values()) {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + tableOf(collection) + " (" + schemaOf(collection) + ")");
+            }
+        }
+        addColumnIfMissing(HallCollection.STUDENTS, "seat_requested", "BOOLEAN");
+        addColumnIfMissing(HallCollection.STUDENTS, "room_preferences", "VARCHAR(1000)");
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "hall-jdbc-close"));
+    }
+
+    // Tables created before a column was added get it here; existing rows read it as null
+    private void addColumnIfMissing(HallCollection collection, String column, String type) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeQuery("SELECT " + column + " FROM " + tableOf(collection) + " WHERE 1 = 0").close();
+        } catch (SQLException missing) {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("ALTER TABLE " + tableOf(collection) + " ADD COLUMN " + column + " " + type);
+            }
+        }
+    }
+
+    private static String tableOf(HallCollection collection) {
+        return "hall_" + collection.name().toLowerCase();
+    }
+
+    private static String schemaOf(HallCollection collection) {
+        switch (collection) {
+            case USERS:
+                return "username VARCHAR(255) PRIMARY KEY, password VARCHAR(255), role VARCHAR(32)";
+            case STUDENTS:
+                return "id VARCHAR(255) PRIMARY KEY, name VARCHAR(255), contact VARCHAR(255), distance INT, "
+                        + "merit INT, income INT, room_number VARCHAR(255), department VARCHAR(255), seat_requested BOOLEAN, "
+                        + "room_preferences VARCHAR(1000)";
+            case ROOMS:
+                return "room_number VARCHAR(255) PRIMARY KEY, capacity INT, occupants VARCHAR(4000)";
+            case COMPLAINTS:
+                return "complaint_id VARCHAR(255) PRIMARY KEY, student_id VARCHAR(255), description VARCHAR(4000), "
+                        + "resolved BOOLEAN";
+            default:
+                return "appointment_id VARCHAR(255) PRIMARY KEY, student_id VARCHAR(255), authority VARCHAR(255), "
+                        + "appointment_date VARCHAR(32), appointment_time VARCHAR(32), approved BOOLEAN";
+        }
+    }
+
+    // Column names in row order; the key column comes first
+    private static String[] columnsOf(HallCollection collection) {
+        switch (collection) {
+            case USERS:
+                return new String[] {"username", "password", "role"};
+            case STUDENTS:
+                return new String[] {"id", "name", "contact", "distance", "merit", "income", "room_number", "department",
+                        "seat_requested", "room_preferences"};
+            case ROOMS:
+                return new String[] {"room_number", "capacity", "occupants"};
+            case COMPLAINTS:
+                return new String[] {"complaint_id", "student_id", "description", "resolved"};
+            default:
+                return new String[] {"appointment_id", "student_id", "authority", "appointment_date", "appointment_time", "approved"};
+        }
+    }
+
+    private static Object[] rowOf(Object entity) {
+        if (entity instanceof User) {
+            User u = (User) entity;
+            return new Object[] {u.getUsername(), u.getPassword(), u.getRole()};
+        }
+        if (entity instanceof Student) {
+            Student s = (Student) entity;
+            return new Object[] {s.getId(), s.getName(), s.getContact(), s.getDistance(), s.getMerit(),
+                    s.getFatherMonthlyIncome(), s.getRoomNumber(), s.getDepartment(), s.isSeatRequested(),
+                    String.join("\n", s.getRoomPreferences())};
+        }
+        if (entity instanceof Room) {
+            Room r = (Room) entity;
+            return new Object[] {r.getRoomNumber(), r.getCapacity(), String.join("\n", r.getOccupants())};
+        }
+        if (entity instanceof Complaint) {
+            Complaint c = (Complaint) entity;
+            return new Object[] {c.getComplaintId(), c.getStudentId(), c.getDescription(), c.isResolved()};
+        }
+        Appointment a = (Appointment) entity;
+        return new Object[] {a.getAppointmentId(), a.getStudentId(), a.getAuthority(), a.getDate(), a.getTime(), a.isApproved()};
+    }
+
+    private static Object entityOf(HallCollection collection, ResultSet rs) throws SQLException {
+        switch (collection) {
+            case USERS:
+                return new User(rs.getString(1), rs.getString(2), rs.getString(3));
+            case STUDENTS: {
+                Student student = new Student(rs.getString(1), rs.getString(2), rs.getString(3), rs.getInt(4),
+                        rs.getInt(5), rs.getInt(6), rs.getString(8));
+                student.setRoomNumber(rs.getString(7));
+                student.setSeatRequested(rs.getBoolean(9));
+                String preferences = rs.getString(10);
+                if (preferences != null && !preferences.isEmpty()) {
+                    student.setRoomPreferences(Arrays.asList(preferences.split("\n")));
+                }
+                return student;
+            }
+            case ROOMS: {
+                Room room = new Room(rs.getString(1), rs.getInt(2));
+                String occupants = rs.getString(3);
+                if (occupants != null && !occupants.isEmpty()) {
+                    room.getOccupants().addAll(Arrays.asList(occupants.split("\n")));
+                }
+                return room;
+            }
+            case COMPLAINTS: {
+                Complaint complaint = new Complaint(rs.getString(1), rs.getString(2), rs.getString(3));
+                complaint.setResolved(rs.getBoolean(4));
+                return complaint;
+            }
+            default: {
+                Appointment appointment = new Appointment(rs.getString(1), rs.getString(2), rs.getString(3),
+                        rs.getString(4), rs.getString(5));
+                appointment.setApproved(rs.getBoolean(6));
+                return appointment;
+            }
+        }
+    }
+
+    @Override
+    public synchronized List<?> load(HallCollection collection) throws IOException {
+        try {
+            PreparedStatement registered = prepare("SELECT name FROM hall_collections WHERE name = ?");
+            registered.setString(1, collection.name());
+            try (ResultSet rs = registered.executeQuery()) {
+                if (!rs.next()) {
+                    return importFromFiles(collection);
+                }
+            }
+            String[] columns = columnsOf(collection);
+            List<Object> entities = new ArrayList<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("SELECT " + String.join(", ", columns)
+                         + " FROM " + tableOf(collection) + " ORDER BY " + columns[0])) {
+                while (rs.next()) {
+                    entities.add(entityOf(collection, rs));
+                }
+            }
+            return entities;
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    // Copies the collection in from the file storage and registers it, in one transaction; a
+    // collection that cannot be read stays unregistered and is tried again next start. Returns
+    // null, so sample data is seeded, only if there is nothing on disk either.
+    private List<?> importFromFiles(HallCollection collection) throws IOException, SQLException {
+        if (fileStorage == null) {
+            // Only loads, so it never asks for a snapshot to write
+            fileStorage = new FileHallStorage(c -> Collections.emptyList(), false);
+        }
+        List<?> entities = fileStorage.load(collection);
+        connection.setAutoCommit(false);
+        try {
+            if (entities != null) {
+                for (Object entity : entities) {
+                    writeRow(collection, rowOf(entity));
+                }
+            }
+            PreparedStatement register = prepare("INSERT INTO hall_collections (name) VALUES (?)");
+            register.setString(1, collection.name());
+            register.executeUpdate();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        if (entities != null && !entities.isEmpty()) {
+            System.err.println("Imported " + entities.size() + " " + collection.name().toLowerCase() + " from "
+                    + collection.getFileName() + " into " + tableOf(collection));
+        }
+        return entities;
+    }
+
+    @Override
+    public synchronized void upsert(Object entity) {
+        HallCollection collection = HallCollection.of(entity);
+        Object[] row = rowOf(entity);
+        long start = System.nanoTime();
+        try {
+            writeRow(collection, row);
+            rowWritten(start);
+        } catch (SQLException e) {
+            throw failed("Error saving " + tableOf(collection) + " row " + row[0], e);
+        }
+    }
+
+    // Updates the row, or inserts it when no row has the key yet
+    private void writeRow(HallCollection collection, Object[] row) throws SQLException {
+        String[] columns = columnsOf(collection);
+        StringBuilder update = new StringBuilder("UPDATE ").append(tableOf(collection)).append(" SET ");
+        for (int i = 1; i < columns.length; i++) {
+            update.append(i > 1 ? ", " : "").append(columns[i]).append(" = ?");
+        }
+        update.append(" WHERE ").append(columns[0]).append(" = ?");
+        PreparedStatement statement = prepare(update.toString());
+        for (int i = 1; i < row.length; i++) {
+            bind(statement, i, row[i]);
+        }
+        bind(statement, row.length, row[0]);
+        if (statement.executeUpdate() == 0) {
+            String[] marks = new String[columns.length];
+            Arrays.fill(marks, "?");
+            PreparedStatement insert = prepare("INSERT INTO " + tableOf(collection) + " ("
+                    + String.join(", ", columns) + ") VALUES (" + String.join(", ", marks) + ")");
+            for (int i = 0; i < row.length; i++) {
+                bind(insert, i + 1, row[i]);
+            }
+            insert.executeUpdate();
+        }
+    }
+
+    @Override
+    public synchronized void delete(HallCollection collection, String key) {
+        long start = System.nanoTime();
+        try {
+            PreparedStatement statement = prepare("DELETE FROM " + tableOf(collection)
+                    + " WHERE " + columnsOf(collection)[0] + " = ?");
+            statement.setString(1, key);
+            statement.executeUpdate();
+            rowWritten(start);
+        } catch (SQLException e) {
+            throw failed("Error deleting " + tableOf(collection) + " row " + key, e);
+        }
+    }
+
+    // Inside a batch the failure is also kept, so the batch rolls back even if the caller
+    // catches the exception and carries on
+    private IllegalStateException failed(String message, SQLException e) {
+        if (batchDepth > 0 && batchFailure == null) {
+            batchFailure = e;
+        }
+        return new IllegalStateException(message + ": " + e.getMessage(), e);
+    }
+
+    // Runs the changes in one transaction; nested batches join the outer one. The transaction
+    // commits only if every row in it was written; otherwise none of them are.
+    @Override
+    public synchronized void batch(Runnable changes) {
+        if (batchDepth == 0) {
+            try {
+                connection.setAutoCommit(false);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Error starting transaction: " + e.getMessage(), e);
+            }
+            batchStart = System.nanoTime();
+        }
+        batchDepth++;
+        boolean completed = false;
+        try {
+            changes.run();
+            completed = true;
+        } finally {
+            if (--batchDepth == 0) {
+                endTransaction(completed);
+            }
+        }
+    }
+
+    // When the changes threw, their exception is already on its way out; otherwise a failed
+    // row or commit is thrown here, after the rollback
+    private void endTransaction(boolean completed) {
+        SQLException failure = batchFailure;
+        batchFailure = null;
+        int rows = batchRows;
+        batchRows = 0;
+        try {
+            if (completed && failure == null) {
+                try {
+                    connection.commit();
+                    stats.recordJournalFlush(rows, 0, System.nanoTime() - batchStart, true);
+                } catch (SQLException e) {
+                    failure = e;
+                    connection.rollback();
+                }
+            } else {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            System.err.println("Error rolling back transaction: " + e.getMessage());
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                System.err.println("Error ending transaction: " + e.getMessage());
+            }
+        }
+        if (completed && failure != null) {
+            throw new IllegalStateException("Transaction rolled back: " + failure.getMessage(), failure);
+        }
+    }
+
+    // Outside a batch every statement commits on its own, so it counts as a durable flush
+    private void rowWritten(long start) {
+        if (batchDepth > 0) {
+            batchRows++;
+        } else {
+            stats.recordJournalFlush(1, 0, System.nanoTime() - start, true);
+        }
+    }
+
+    private PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    private static void bind(PreparedStatement statement, int index, Object value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, Types.VARCHAR);
+        } else {
+            statement.setObject(index, value);
+        }
+    }
+
+    // Rows are only ever written one entity at a time, so the stored table is never replaced
+    @Override
+    public void markUnreadable(HallCollection collection) {
+    }
+
+    // Every change is committed as it is made
+    @Override
+    public void checkpoint() {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void awaitDurable() {
+    }
+
+    @Override
+    public PersistenceStats getStats() { return stats; }
+
+    private synchronized void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing database: " + e.getMessage());
+        }
+    }
+}
+
+// Hall Data Codec
+// Binary format for the .dat snapshots and journal records:
+//   snapshot = magic, schema version, collection, string dictionary, record count, records, CRC32
+//   record   = field count, byte length, fields
+// Ints are zigzag varints. Repeated strings (departments, room numbers, authorities, roles,
+// dates, times) are written once to the dictionary and referenced by index. Readers fill
+// fields a record does not have with defaults and skip fields they do not know, so adding a
+// field at the end of a record does not need a schema version bump.
+class HallDataCodec {
+    public static final int MAGIC = 0x48414C44; // "HALD"
+    // Version 2 added the CRC32 trailer
+    public static final int SCHEMA_VERSION = 2;
+
+    public static boolean isSnapshot(byte[] bytes) {
+        return bytes.length >= 4
+                && ((bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF)) == MAGIC;
+    }
+
+    public static byte[] encodeSnapshot(HallCollection collection, List<?> entities) {
+        CodecWriter body = new CodecWriter(true);
+        for (Object entity : entities) {
+            writeEntity(body, collection, entity);
+        }
+        CodecWriter file = new CodecWriter(false);
+        file.writeFixedInt(MAGIC);
+        file.writeVarint(SCHEMA_VERSION);
+        file.writeVarint(collection.ordinal());
+        List<String> dictionary = body.getDictionary();
+        file.writeVarint(dictionary.size());
+        for (String entry : dictionary) {
+            file.writeString(entry);
+        }
+        file.writeVarint(entities.size());
+        file.writeBytes(body.toByteArray());
+        byte[] bytes = file.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        file.writeFixedInt((int) crc.getValue());
+        return file.toByteArray();
+    }
+
+    public static List<Object> decodeSnapshot(HallCollection collection, byte[] bytes) throws IOException {
+        CodecReader in = new CodecReader(bytes);
+        if (in.readFixedInt() != MAGIC) {
+            throw new IOException(collection.getFileName() + " is not a hall data snapshot");
+        }
+        long version = in.readVarint();
+        if (version > SCHEMA_VERSION) {
+            throw new IOException(collection.getFileName() + " was written by a newer schema version " + version);
+        }
+        if (version >= 2) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - 4);
+            CodecReader trailer = new CodecReader(bytes);
+            trailer.skip(bytes.length - 4);
+            if (trailer.readFixedInt() != (int) crc.getValue()) {
+                throw new IOException(collection.getFileName() + " failed its checksum");
+            }
+        }
+        if (in.readVarint() != collection.ordinal()) {
+            throw new IOException(collection.getFileName() + " holds a different collection");
+        }
+        int dictionarySize = (int) in.readVarint();
+        List<String> dictionary = new ArrayList<>(dictionarySize);
+        for (int i = 0; i < dictionarySize; i++) {
+            dictionary.add(in.readString());
+        }
+        in.setDictionary(dictionary);
+        int count = (int) in.readVarint();
+        List<Object> entities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entities.add(readEntity(in, collection));
+        }
+        return entities;
+    }
+
+    public static void writeEntity(CodecWriter out, HallCollection collection, Object entity) {
+        switch (collection) {
+            case USERS: writeUser(out, (User) entity); break;
+            case STUDENTS: writeStudent(out, (Student) entity); break;
+            case ROOMS: writeRoom(out, (Room) entity); break;
+            case COMPLAINTS: writeComplaint(out, (Complaint) entity); break;
+            default: writeAppointment(out, (Appointment) entity); break;
+        }
+    }
+
+    public static Object readEntity(CodecReader in, HallCollection collection) throws IOException {
+        switch (collection) {
+            case USERS: return readUser(in);
+            case STUDENTS: return readStudent(in);
+            case ROOMS: return readRoom(in);
+            case COMPLAINTS: return readComplaint(in);
+            default: return readAppointment(in);
+        }
+    }
+
+    public static String keyOf(Object entity) {
+        if (entity instanceof User) return ((User) entity).getUsername();
+        if (entity instanceof Student) return ((Student) entity).getId();
+        if (entity instanceof Room) return ((Room) entity).getRoomNumber();
+        if (entity instanceof Complaint) return ((Complaint) entity).getComplaintId();
+        return ((Appointment) entity).getAppointmentId();
+    }
+
+    public static void writeUser(CodecWriter out, User user) {
+        out.beginRecord();
+        out.writeString(user.getUsername());
+        out.writeString(user.getPassword());
+        out.writeDictString(user.getRole());
+        out.endRecord();
+    }
+
+    public static User readUser(CodecReader in) throws IOException {
+        in.beginRecord();
+        User user = new User(in.readString(), in.readString(), in.readDictString());
+        in.endRecord();
+        return user;
+    }
+
+    public static void writeStudent(CodecWriter out, Student student) {
+        out.beginRecord();
+        out.writeString(student.getId());
+        out.writeString(student.getName());
+        out.writeString(student.getContact());
+        out.writeInt(student.getDistance());
+        out.writeInt(student.getMerit());
+        out.writeInt(student.getFatherMonthlyIncome());
+        out.writeDictString(student.getRoomNumber());
+        out.writeDictString(student.getDepartment());
+        out.writeBoolean(student.isSeatRequested());
+        out.writeStringList(student.getRoomPreferences());
+        out.endRecord();
+    }
+
+    public static Student readStudent(CodecReader in) throws IOException {
+        in.beginRecord();
+        String id = in.readString();
+        String name = in.readString();
+        String contact = in.readString();
+        int distance = in.readInt();
+        int merit = in.readInt();
+        int income = in.readInt();
+        String roomNumber = in.readDictString();
+        Student student = new Student(id, name, contact, distance, merit, income, in.readDictString());
+        student.setRoomNumber(roomNumber);
+        // Absent from records written before seat requests existed, and read as false
+        student.setSeatRequested(in.readBoolean());
+        student.setRoomPreferences(in.readStringList());
+        in.endRecord();
+        return student;
+    }
+
+    public static void writeRoom(CodecWriter out, Room room) {
+        out.beginRecord();
+        out.writeDictString(room.getRoomNumber());
+        out.writeInt(room.getCapacity());
+        out.writeStringList(room.getOccupants());
+        out.endRecord();
+    }
+
+    public static Room readRoom(CodecReader in) throws IOException {
+        in.beginRecord();
+        Room room = new Room(in.readDictString(), in.readInt());
+        room.getOccupants().addAll(in.readStringList());
+        in.endRecord();
+        return room;
+    }
+
+    public static void writeComplaint(CodecWriter out, Complaint complaint) {
+        out.beginRecord();
+        out.writeString(complaint.getComplaintId());
+        out.writeString(complaint.getStudentId());
+        out.writeString(complaint.getDescription());
+        out.writeBoolean(complaint.isResolved());
+        out.endRecord();
+    }
+
+    public static Complaint readComplaint(CodecReader in) throws IOException {
+        in.beginRecord();
+        Complaint complaint = new Complaint(in.readString(), in.readString(), in.readString());
+        complaint.setResolved(in.readBoolean());
+        in.endRecord();
+        return complaint;
+    }
+
+    public static void writeAppointment(CodecWriter out, Appointment appointment) {
+        out.beginRecord();
+        out.writeString(appointment.getAppointmentId());
+        out.writeString(appointment.getStudentId());
+        out.writeDictString(appointment.getAuthority());
+        out.writeDictString(appointment.getDate());
+        out.writeDictString(appointment.getTime());
+        out.writeBoolean(appointment.isApproved());
+        out.endRecord();
+    }
+
+    public static Appointment readAppointment(CodecReader in) throws IOException {
+        in.beginRecord();
+        Appointment appointment = new Appointment(in.readString(), in.readString(), in.readDictString(),
+                in.readDictString(), in.readDictString());
+        appointment.setApproved(in.readBoolean());
+        in.endRecord();
+        return appointment;
+    }
+}
+
+// Codec Writer
+class CodecWriter {
+    private ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private ByteArrayOutputStream record;
+    private int recordFields;
+    private Map<String, Integer> dictionary;
+    private List<String> dictionaryEntries;
+
+    // Without a dictionary, dictionary strings are written inline (used for journal records)
+    public CodecWriter(boolean useDictionary) {
+        if (useDictionary) {
+            dictionary = new HashMap<>();
+            dictionaryEntries = new ArrayList<>();
+        }
+    }
+
+    public void beginRecord() {
+        record = new ByteArrayOutputStream();
+        recordFields = 0;
+    }
+
+    public void endRecord() {
+        ByteArrayOutputStream fields = record;
+        record = null;
+        writeVarint(recordFields);
+        writeVarint(fields.size());
+        byte[] bytes = fields.toByteArray();
+        out.write(bytes, 0, bytes.length);
+    }
+
+    public void writeByte(int value) {
+        target().write(value);
+    }
+
+    public void writeFixedInt(int value) {
+        writeByte(value >>> 24);
+        writeByte(value >>> 16);
+        writeByte(value >>> 8);
+        writeByte(value);
+    }
+
+    public void writeVarint(long value) {
+        ByteArrayOutputStream target = target();
+        while ((value & ~0x7FL) != 0) {
+            target.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        target.write((int) value);
+    }
+
+    public void writeBytes(byte[] bytes) {
+        target().write(bytes, 0, bytes.length);
+    }
+
+    public void writeInt(int value) {
+        recordFields++;
+        writeVarint(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+    }
+
+    public void writeBoolean(boolean value) {
+        recordFields++;
+        writeVarint(value ? 1 : 0);
+    }
+
+    // Length + 1 followed by UTF-8 bytes; 0 means null
+    public void writeString(String value) {
+        recordFields++;
+        writeRawString(value);
+    }
+
+    public void writeDictString(String value) {
+        recordFields++;
+        if (dictionary == null) {
+            writeRawString(value);
+        } else if (value == null) {
+            writeVarint(0);
+        } else {
+            Integer index = dictionary.get(value);
+            if (index == null) {
+                index = dictionaryEntries.size();
+                dictionary.put(value, index);
+                dictionaryEntries.add(value);
+            }
+            writeVarint(index + 1);
+        }
+    }
+
+    public void writeStringList(List<String> values) {
+        recordFields++;
+        writeVarint(values.size());
+        for (String value : values) {
+            writeRawString(value);
+        }
+    }
+
+    private void writeRawString(String value) {
+        if (value == null) {
+            writeVarint(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length + 1);
+        writeBytes(bytes);
+    }
+
+    public List<String> getDictionary() {
+        return dictionaryEntries != null ? dictionaryEntries : Collections.emptyList();
+    }
+
+    public byte[] toByteArray() {
+        return out.toByteArray();
+    }
+
+    private ByteArrayOutputStream target() {
+        return record != null ? record : out;
+    }
+}
+
+// Codec Reader
+class CodecReader {
+    private byte[] bytes;
+    private int pos;
+    private int recordEnd = -1;
+    private int remainingFields;
+    private List<String> dictionary;
+
+    public CodecReader(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public void setDictionary(List<String> dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public void skip(int count) {
+        pos += count;
+    }
+
+    public void beginRecord() throws IOException {
+        remainingFields = (int) readVarint();
+        int length = (int) readVarint();
+        recordEnd = pos + length;
+        if (length < 0 || recordEnd > bytes.length) {
+            throw new EOFException("Truncated record");
+        }
+    }
+
+    // Skips any fields added by a newer writer
+    public void endRecord() {
+        pos = recordEnd;
+        recordEnd = -1;
+    }
+
+    public int readByte() throws IOException {
+        if (pos >= limit()) {
+            throw new EOFException();
+        }
+        return bytes[pos++] & 0xFF;
+    }
+
+    // Inside a record nothing may be read past its end, so a corrupt length fails the record
+    // instead of reading into the next one
+    private int limit() {
+        return recordEnd >= 0 ? recordEnd : bytes.length;
+    }
+
+    public int readFixedInt() throws IOException {
+        return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+    }
+
+    public long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public int readInt() throws IOException {
+        if (!nextField()) return 0;
+        int value = (int) readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public boolean readBoolean() throws IOException {
+        return nextField() && readVarint() != 0;
+    }
+
+    public String readString() throws IOException {
+        return nextField() ? readRawString() : null;
+    }
+
+    public String readDictString() throws IOException {
+        if (!nextField()) return null;
+        if (dictionary == null) {
+            return readRawString();
+        }
+        int index = (int) readVarint();
+        if (index > dictionary.size()) {
+            throw new IOException("Bad dictionary reference " + index);
+        }
+        return index == 0 ? null : dictionary.get(index - 1);
+    }
+
+    public List<String> readStringList() throws IOException {
+        List<String> values = new ArrayList<>();
+        if (!nextField()) return values;
+        int count = (int) readVarint();
+        for (int i = 0; i < count; i++) {
+            values.add(readRawString());
+        }
+        return values;
+    }
+
+    private String readRawString() throws IOException {
+        int length = (int) readVarint();
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0 || length - 1 > limit() - pos) {
+            throw new EOFException();
+        }
+        String value = new String(bytes, pos, length - 1, StandardCharsets.UTF_8);
+        pos += length - 1;
+        return value;
+    }
+
+    // Fields missing from an older record read as defaults
+    private boolean nextField() {
+        if (recordEnd < 0) {
+            return true;
+        }
+        if (remainingFields == 0) {
+            return false;
+        }
+        remainingFields--;
+        return true;
+    }
+}
+
+// Mapped Record Store
+// Keeps one entity per fixed-width slot in a memory-mapped file, with strings in a separate
+// append-only heap file referenced by offset. A checkpoint only rewrites the slots of entities
+// that changed, in place, instead of re-encoding the whole collection. Every entity is decoded
+// when the store is opened, as the hall keeps all of them in memory; what the store saves is
+// the cost of writing a checkpoint, not of loading.
+//   slot file = header (magic, layout version, slot size, slot count, heap end), slots
+//   slot      = flags, checksum, then the fields laid out by the subclass from offset 8
+//   heap      = (length, UTF-8 bytes) entries; a string ref of -1 is null
+// The checksum covers every field value, strings included, so a slot torn by a crash in the
+// middle of an in-place update is recognised and skipped; the journal, which is only cut once
+// a checkpoint has been forced to disk, still holds the change and replays it.
+// Layout 1 slots had no checksum and their fields started at offset 4.
+abstract class MappedRecordStore<T> {
+    private static final int MAGIC = 0x484D4150; // "HMAP"
+    private static final int LAYOUT_VERSION = 2;
+    private static final int CHECKSUM = 4;
+    private static final int HEADER_SIZE = 32;
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int INITIAL_HEAP = 64 * 1024;
+    private static final int FLAG_LIVE = 1;
+
+    private File slotFile;
+    private File heapFile;
+    private FileChannel slotChannel;
+    private FileChannel heapChannel;
+    private MappedByteBuffer slots;
+    private MappedByteBuffer heap;
+    private int slotSize;
+    private int fileSlotSize;
+    private int fileLayout;
+    // How much earlier the fields of a layout 1 slot start than the current layout's
+    private int fieldShift;
+    private int slotCount;
+    private int heapEnd;
+    private Map<String, Integer> slotIndex = new HashMap<>();
+    private Deque<Integer> freeSlots = new ArrayDeque<>();
+    private Map<String, Integer> stringRefs = new HashMap<>();
+    private Map<Integer, String> stringCache = new HashMap<>();
+    // Sum of one CRC per field of the slot being written or read, so field order does not matter
+    private CRC32 fieldCrc = new CRC32();
+    private long checksum;
+    private int checksumBase;
+
+    protected MappedRecordStore(File slotFile, File heapFile, int slotSize) throws IOException {
+        this.slotFile = slotFile;
+        this.heapFile = heapFile;
+        this.slotSize = slotSize;
+        open(slotFile, heapFile);
+    }
+
+    protected abstract String keyOf(T entity);
+    protected abstract void writeSlot(int base, T entity);
+    protected abstract T readSlot(int base);
+
+    public boolean isEmpty() {
+        return slotCount == 0;
+    }
+
+    private void open(File slotPath, File heapPath) throws IOException {
+        boolean created = !slotPath.exists() || slotPath.length() < HEADER_SIZE;
+        slotChannel = new RandomAccessFile(slotPath, "rw").getChannel();
+        heapChannel = new RandomAccessFile(heapPath, "rw").getChannel();
+        if (created) {
+            slots = slotChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) INITIAL_SLOTS * slotSize);
+            fileSlotSize = slotSize;
+            fileLayout = LAYOUT_VERSION;
+            slotCount = 0;
+            heapEnd = 0;
+            writeHeader();
+        } else {
+            slots = slotChannel.map(FileChannel.MapMode.READ_WRITE, 0, slotChannel.size());
+            if (slots.getInt(0) != MAGIC || slots.getInt(4) > LAYOUT_VERSION) {
+                throw new IOException(slotPath + " is not a mapped record store this version can read");
+            }
+            fileLayout = slots.getInt(4);
+            fileSlotSize = slots.getInt(8);
+            slotCount = slots.getInt(12);
+            heapEnd = slots.getInt(16);
+        }
+        fieldShift = fileLayout < 2 ? 4 : 0;
+        heap = heapChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(heapChannel.size(), INITIAL_HEAP));
+    }
+
+    // Decodes every live slot; slots written with an older, shorter layout read missing fields as
+    // defaults. Torn slots are left out and reused.
+    public List<T> loadAll() {
+        List<T> entities = new ArrayList<>(slotCount);
+        int torn = 0;
+        for (int i = 0; i < slotCount; i++) {
+            int base = HEADER_SIZE + i * fileSlotSize;
+            if ((slots.getInt(base) & FLAG_LIVE) == 0) {
+                freeSlots.add(i);
+                continue;
+            }
+            startChecksum(base - fieldShift);
+            T entity;
+            try {
+                entity = readSlot(base - fieldShift);
+            } catch (RuntimeException e) {
+                entity = null; // a torn string reference can point anywhere in the heap
+            }
+            if (entity == null || (fileLayout >= 2 && (int) checksum != slots.getInt(base + CHECKSUM))) {
+                torn++;
+                freeSlots.add(i);
+                continue;
+            }
+            slotIndex.put(keyOf(entity), i);
+            entities.add(entity);
+        }
+        if (torn > 0) {
+            System.err.println("Skipped " + torn + " damaged records in " + slotFile + "; records the journal still holds are replayed");
+        }
+        return entities;
+    }
+
+    public void close() throws IOException {
+        slotChannel.close();
+        heapChannel.close();
+    }
+
+    // Writes the changed entities in place and clears the slots of deleted ones
+    public long write(Set<String> dirtyKeys, List<T> current) throws IOException {
+        if (fileSlotSize != slotSize || fileLayout != LAYOUT_VERSION) {
+            return rewrite(current);
+        }
+        long bytes = 0;
+        Set<String> remaining = new HashSet<>(dirtyKeys);
+        for (T entity : current) {
+            if (remaining.remove(keyOf(entity))) {
+                bytes += put(entity);
+            }
+        }
+        for (String key : remaining) {
+            Integer index = slotIndex.remove(key);
+            if (index != null) {
+                slots.putInt(HEADER_SIZE + index * slotSize, 0);
+                freeSlots.add(index);
+                bytes += 4;
+            }
+        }
+        writeHeader();
+        heap.force();
+        slots.force();
+        return bytes;
+    }
+
+    // Writes every entity with the current layout into new files beside the old ones, forces
+    // them, then moves them into place: the heap first, then the slot file. The new heap starts
+    // as a copy of the old one and only appends, so the old slot file can still read it, and
+    // whichever slot file a crash leaves in place is whole.
+    public long rewrite(List<T> current) throws IOException {
+        File slotTemp = new File(slotFile.getPath() + ".tmp");
+        File heapTemp = new File(heapFile.getPath() + ".tmp");
+        int keptHeap = heapEnd;
+        heap.force();
+        slotChannel.close();
+        heapChannel.close();
+        Files.deleteIfExists(slotTemp.toPath());
+        Files.copy(heapFile.toPath(), heapTemp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        slotIndex.clear();
+        freeSlots.clear();
+        open(slotTemp, heapTemp);
+        heapEnd = keptHeap;
+        long bytes = 0;
+        for (T entity : current) {
+            bytes += put(entity);
+        }
+        writeHeader();
+        heap.force();
+        slots.force();
+        slotChannel.close();
+        heapChannel.close();
+        AtomicFileWriter.replace(heapTemp.toPath(), heapFile.toPath());
+        AtomicFileWriter.replace(slotTemp.toPath(), slotFile.toPath());
+        open(slotFile, heapFile);
+        return bytes;
+    }
+
+    private long put(T entity) throws IOException {
+        String key = keyOf(entity);
+        Integer index = slotIndex.get(key);
+        if (index == null) {
+            index = freeSlots.isEmpty() ? slotCount++ : freeSlots.poll();
+            ensureSlotCapacity(index + 1);
+            slotIndex.put(key, index);
+        }
+        int base = HEADER_SIZE + index * slotSize;
+        int heapBefore = heapEnd;
+        startChecksum(base);
+        writeSlot(base, entity);
+        slots.putInt(base + CHECKSUM, (int) checksum);
+        slots.putInt(base, FLAG_LIVE);
+        return slotSize + heapEnd - heapBefore;
+    }
+
+    private void startChecksum(int base) {
+        checksum = 0;
+        checksumBase = base;
+    }
+
+    private void addToChecksum(int field, byte[] value) {
+        fieldCrc.reset();
+        fieldCrc.update(field);
+        if (value != null) {
+            fieldCrc.update(1);
+            fieldCrc.update(value);
+        }
+        checksum += fieldCrc.getValue();
+    }
+
+    private static byte[] intBytes(int value) {
+        return ByteBuffer.allocate(4).putInt(value).array();
+    }
+
+    private void writeHeader() {
+        slots.putInt(0, MAGIC);
+        slots.putInt(4, fileLayout);
+        slots.putInt(8, fileSlotSize);
+        slots.putInt(12, slotCount);
+        slots.putInt(16, heapEnd);
+    }
+
+    private void ensureSlotCapacity(int count) throws IOException {
+        long needed = HEADER_SIZE + (long) count * slotSize;
+        if (needed > slots.capacity()) {
+            slots = slotChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(needed, 2L * slots.capacity()));
+        }
+    }
+
+    protected void putInt(int offset, int value) {
+        slots.putInt(offset, value);
+        addToChecksum(offset - checksumBase, intBytes(value));
+    }
+
+    protected int getInt(int base, int field) {
+        int value = field - fieldShift + 4 <= fileSlotSize ? slots.getInt(base + field) : 0;
+        addToChecksum(field, intBytes(value));
+        return value;
+    }
+
+    // Equal strings share one heap entry, which keeps departments and room numbers stored once
+    protected void putString(int offset, String value) {
+        slots.putInt(offset, stringRef(value));
+        addToChecksum(offset - checksumBase, value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    protected String getString(int base, int field) {
+        String value = field - fieldShift + 4 <= fileSlotSize ? stringAt(slots.getInt(base + field)) : null;
+        addToChecksum(field, value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+        return value;
+    }
+
+    private int stringRef(String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer ref = stringRefs.get(value);
+        if (ref != null) {
+            return ref;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (heapEnd + 4 + bytes.length > heap.capacity()) {
+            try {
+                heap = heapChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                        Math.max(heapEnd + 4L + bytes.length, 2L * heap.capacity()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        ref = heapEnd;
+        heap.putInt(ref, bytes.length);
+        ByteBuffer target = heap.duplicate();
+        target.position(ref + 4);
+        target.put(bytes);
+        heapEnd += 4 + bytes.length;
+        stringRefs.put(value, ref);
+        stringCache.put(ref, value);
+        return ref;
+    }
+
+    private String stringAt(int ref) {
+        if (ref < 0) {
+            return null;
+        }
+        String value = stringCache.get(ref);
+        if (value == null) {
+            byte[] bytes = new byte[heap.getInt(ref)];
+            ByteBuffer source = heap.duplicate();
+            source.position(ref + 4);
+            source.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            stringCache.put(ref, value);
+            stringRefs.putIfAbsent(value, ref);
+        }
+        return value;
+    }
+}
+
+// Mapped Student Store
+class MappedStudentStore extends MappedRecordStore<Student> {
+    private static final int ID = 8;
+    private static final int NAME = 12;
+    private static final int CONTACT = 16;
+    private static final int DISTANCE = 20;
+    private static final int MERIT = 24;
+    private static final int INCOME = 28;
+    private static final int ROOM_NUMBER = 32;
+    private static final int DEPARTMENT = 36;
+    private static final int SEAT_REQUESTED = 40;
+    private static final int ROOM_PREFERENCES = 44;
+    private static final int SLOT_SIZE = 48;
+    // Preferences are stored as one heap string joined by this separator
+    private static final String SEPARATOR = "\0";
+
+    public MappedStudentStore(File slotFile, File heapFile) throws IOException {
+        super(slotFile, heapFile, SLOT_SIZE);
+    }
+
+    @Override
+    protected String keyOf(Student student) { return student.getId(); }
+
+    @Override
+    protected void writeSlot(int base, Student student) {
+        putString(base + ID, student.getId());
+        putString(base + NAME, student.getName());
+        putString(base + CONTACT, student.getContact());
+        putInt(base + DISTANCE, student.getDistance());
+        putInt(base + MERIT, student.getMerit());
+        putInt(base + INCOME, student.getFatherMonthlyIncome());
+        putString(base + ROOM_NUMBER, student.getRoomNumber());
+        putString(base + DEPARTMENT, student.getDepartment());
+        putInt(base + SEAT_REQUESTED, student.isSeatRequested() ? 1 : 0);
+        putString(base + ROOM_PREFERENCES, student.getRoomPreferences().isEmpty() ? null
+                : String.join(SEPARATOR, student.getRoomPreferences()));
+    }
+
+    @Override
+    protected Student readSlot(int base) {
+        Student student = new Student(getString(base, ID), getString(base, NAME), getString(base, CONTACT),
+                getInt(base, DISTANCE), getInt(base, MERIT), getInt(base, INCOME), getString(base, DEPARTMENT));
+        student.setRoomNumber(getString(base, ROOM_NUMBER));
+        student.setSeatRequested(getInt(base, SEAT_REQUESTED) != 0);
+        String preferences = getString(base, ROOM_PREFERENCES);
+        if (preferences != null) {
+            student.setRoomPreferences(Arrays.asList(preferences.split(SEPARATOR)));
+        }
+        return student;
+    }
+}
+
+// Mapped Room Store
+class MappedRoomStore extends MappedRecordStore<Room> {
+    private static final int ROOM_NUMBER = 8;
+    private static final int CAPACITY = 12;
+    private static final int OCCUPANTS = 16;
+    private static final int SLOT_SIZE = 20;
+    // Occupant ids are stored as one heap string joined by this separator
+    private static final String SEPARATOR = "\0";
+
+    public MappedRoomStore(File slotFile, File heapFile) throws IOException {
+        super(slotFile, heapFile, SLOT_SIZE);
+    }
+
+    @Override
+    protected String keyOf(Room room) { return room.getRoomNumber(); }
+
+    @Override
+    protected void writeSlot(int base, Room room) {
+        putString(base + ROOM_NUMBER, room.getRoomNumber());
+        putInt(base + CAPACITY, room.getCapacity());
+        putString(base + OCCUPANTS, room.getOccupants().isEmpty() ? null : String.join(SEPARATOR, room.getOccupants()));
+    }
+
+    @Override
+    protected Room readSlot(int base) {
+        Room room = new Room(getString(base, ROOM_NUMBER), getInt(base, CAPACITY));
+        String occupants = getString(base, OCCUPANTS);
+        if (occupants != null) {
+            room.getOccupants().addAll(Arrays.asList(occupants.split(SEPARATOR)));
+        }
+        return room;
+    }
+}
+
+// Atomic File Writer
+// Writes to a temp file next to the target, fsyncs it and renames it over the target, so
+// readers see either the old or the new contents, never a partial file
+class AtomicFileWriter {
+    public static void write(Path target, byte[] bytes) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        replace(temp, absolute);
+    }
+
+    // Moves a file that is already forced to disk over the target in one step
+    public static void replace(Path temp, Path target) throws IOException {
+        Path absolute = target.toAbsolutePath();
+        try {
+            Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // Persist the rename itself; not every platform lets a directory be opened for this
+        try (FileChannel directory = FileChannel.open(absolute.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+}
+
+// Persisted Collections
+enum HallCollection {
+    USERS("users.dat"),
+    STUDENTS("students.dat"),
+    ROOMS("rooms.dat"),
+    COMPLAINTS("complaints.dat"),
+    APPOINTMENTS("appointments.dat");
+
+    private String fileName;
+
+    HallCollection(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getFileName() { return fileName; }
+
+    public static HallCollection of(Object entity) {
+        if (entity instanceof User) return USERS;
+        if (entity instanceof Student) return STUDENTS;
+        if (entity instanceof Room) return ROOMS;
+        if (entity instanceof Complaint) return COMPLAINTS;
+        return APPOINTMENTS;
+    }
+}
+
+// Dirty Tracker
+// Remembers which entities changed since the last checkpoint, grouped by collection
+class DirtyTracker {
+    private Map<HallCollection, Set<String>> dirtyKeys = new EnumMap<>(HallCollection.class);
+
+    public synchronized void mark(HallCollection collection, String key) {
+        dirtyKeys.computeIfAbsent(collection, c -> new HashSet<>()).add(key);
+    }
+
+    public synchronized boolean isDirty(HallCollection collection) {
+        return dirtyKeys.containsKey(collection);
+    }
+
+    // Hands over everything marked so far and starts again empty
+    public synchronized Map<HallCollection, Set<String>> drain() {
+        Map<HallCollection, Set<String>> drained = dirtyKeys;
+        dirtyKeys = new EnumMap<>(HallCollection.class);
+        return drained;
+    }
+
+    // Puts back keys from a drain whose checkpoint failed
+    public synchronized void restore(Map<HallCollection, Set<String>> keys) {
+        keys.forEach((collection, set) -> dirtyKeys.computeIfAbsent(collection, c -> new HashSet<>()).addAll(set));
+    }
+}
+
+// Load Timings
+class LoadTimings {
+    private long start = System.nanoTime();
+    private Map<String, Long> millis = new LinkedHashMap<>();
+
+    // Time one load step took
+    public synchronized void record(String step, long stepStart) {
+        millis.put(step, (System.nanoTime() - stepStart) / 1_000_000);
+    }
+
+    // Time from the start of loading until a phase was reached
+    public synchronized void phase(String name) {
+        millis.put(name, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public synchronized Map<String, Long> getMillis() {
+        return new LinkedHashMap<>(millis);
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : millis.entrySet()) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(entry.getKey()).append(" ").append(entry.getValue()).append(" ms");
+        }
+        return sb.toString();
+    }
+}
+
+// Durability Mode
+// How far a journal write has to get before it is done. Selected with hall.durability:
+//   sync     = every mutation, or every storage batch as a whole, waits until its records
+//              are fsynced
+//   interval = records wait in memory and are written and fsynced together every
+//              hall.fsyncIntervalMs; a crash of the JVM or the machine loses up to that much
+//   buffered = records wait in memory for up to hall.flushWindowMs, then are handed to the
+//              OS without an fsync. A crashed JVM loses the records still waiting; a power
+//              cut can also lose those the OS had not written yet (default)
+// Snapshots written at checkpoints are fsynced in every mode.
+enum DurabilityMode {
+    SYNC, INTERVAL, BUFFERED;
+
+    public static DurabilityMode fromSystemProperties() {
+        String name = System.getProperty("hall.durability", "buffered");
+        try {
+            return valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown hall.durability " + name + ", using buffered");
+            return BUFFERED;
+        }
+    }
+
+    // How long the persister collects records before writing them as one group
+    public long getWindowMillis() {
+        switch (this) {
+            case SYNC: return 0;
+            case INTERVAL: return Long.getLong("hall.fsyncIntervalMs", 200);
+            default: return Long.getLong("hall.flushWindowMs", 50);
+        }
+    }
+
+    public String getLabel() { return name().toLowerCase(); }
+}
+
+// Latency Recorder
+// Keeps the most recent samples, so percentiles follow the current load rather than all history
+class LatencyRecorder {
+    private static final int SAMPLES = 4096;
+    private long[] samples = new long[SAMPLES];
+    private long count;
+
+    public void record(long nanos) {
+        samples[(int) (count++ % SAMPLES)] = nanos;
+    }
+
+    public long percentile(double percentile) {
+        int n = (int) Math.min(count, SAMPLES);
+        if (n == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, n);
+        Arrays.sort(sorted);
+        return sorted[Math.max(0, (int) Math.ceil(percentile / 100 * n) - 1)];
+    }
+}
+
+// Persistence Stats
+class PersistenceStats {
+    private String mode;
+    private long journalFlushes;
+    private long journalSyncs;
+    private long journalRecords;
+    private long journalBytes;
+    private long lastJournalFlushBytes;
+    private LatencyRecorder flushLatency = new LatencyRecorder();
+    private long checkpoints;
+    private long snapshotFiles;
+    private long snapshotBytes;
+    private long lastCheckpointBytes;
+
+    public PersistenceStats(String mode) {
+        this.mode = mode;
+    }
+
+    // A flush hands records to the OS; synced means it also waited for them to reach the disk
+    public synchronized void recordJournalFlush(int records, long bytes, long nanos, boolean synced) {
+        journalFlushes++;
+        if (synced) {
+            journalSyncs++;
+        }
+        journalRecords += records;
+        journalBytes += bytes;
+        lastJournalFlushBytes = bytes;
+        flushLatency.record(nanos);
+    }
+
+    public synchronized void recordCheckpoint(int files, long bytes) {
+        checkpoints++;
+        snapshotFiles += files;
+        snapshotBytes += bytes;
+        lastCheckpointBytes = bytes;
+    }
+
+    public String getMode() { return mode; }
+    public synchronized long getJournalFlushes() { return journalFlushes; }
+    public synchronized long getJournalSyncs() { return journalSyncs; }
+    public synchronized long getJournalRecords() { return journalRecords; }
+    public synchronized long getJournalBytes() { return journalBytes; }
+    public synchronized long getLastJournalFlushBytes() { return lastJournalFlushBytes; }
+    public synchronized long getCheckpoints() { return checkpoints; }
+    public synchronized long getSnapshotFiles() { return snapshotFiles; }
+    public synchronized long getSnapshotBytes() { return snapshotBytes; }
+    public synchronized long getLastCheckpointBytes() { return lastCheckpointBytes; }
+
+    // Over the most recent flushes, in microseconds
+    public synchronized long getFlushLatencyMicros(double percentile) {
+        return flushLatency.percentile(percentile) / 1000;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("journal (%s): %d flushes, %d fsyncs, %d records, %d bytes (last %d), latency p50 %d us, p99 %d us; "
+                        + "snapshots: %d checkpoints, %d files, %d bytes (last %d)",
+                mode, journalFlushes, journalSyncs, journalRecords, journalBytes, lastJournalFlushBytes,
+                flushLatency.percentile(50) / 1000, flushLatency.percentile(99) / 1000,
+                checkpoints, snapshotFiles, snapshotBytes, lastCheckpointBytes);
+    }
+}
+
+// Counting Output Stream
+class CountingOutputStream extends FilterOutputStream {
+    private long count;
+
+    public CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+    }
+
+    public long getCount() { return count; }
+}
+
+// Journal Record
+class JournalRecord {
+    private byte type;
+    private String key;
+    private Object entity;
+
+    public JournalRecord(byte type, String key, Object entity) {
+        this.type = type;
+        this.key = key;
+        this.entity = entity;
+    }
+
+    public byte getType() { return type; }
+    public String getKey() { return key; }
+    public Object getEntity() { return entity; }
+}
+
+// Change Journal
+// Append-only log of typed records, one per changed entity. The .dat files hold the last
+// snapshot; FileHallStorage replays the journal on top of it.
+class ChangeJournal {
+    public static final byte USER_PUT = 1;
+    public static final byte USER_DELETE = 2;
+    public static final byte STUDENT_PUT = 3;
+    public static final byte STUDENT_DELETE = 4;
+    public static final byte ROOM_PUT = 5;
+    public static final byte ROOM_DELETE = 6;
+    public static final byte COMPLAINT_PUT = 7;
+    public static final byte APPOINTMENT_PUT = 8;
+    public static final byte APPOINTMENT_DELETE = 9;
+    public static final byte COMPLAINT_DELETE = 10;
+
+    // Set on records whose body uses HallDataCodec; older records used fixed DataOutput fields
+    private static final int CODEC_RECORD = 0x80;
+
+    private File file;
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    // Counted by every mutator thread and reset by checkpoints; not under the journal's lock,
+    // which is held while a batch is written out
+    private AtomicInteger recordCount = new AtomicInteger();
+    // Open batches, and the last record appended inside them that sync mode still has to wait for
+    private int batchDepth;
+    private long unsyncedSeq;
+    private BackgroundPersister persister;
+    private DurabilityMode mode;
+    private PersistenceStats stats;
+
+    public ChangeJournal(File file, DurabilityMode mode, PersistenceStats stats) {
+        this.file = file;
+        this.mode = mode;
+        this.stats = stats;
+        this.persister = new BackgroundPersister(this::writeBatch, mode.getWindowMillis());
+    }
+
+    public int getRecordCount() { return recordCount.get(); }
+
+    public long getLength() { return file.length(); }
+
+    // Blocks until every record appended so far has been written to the log
+    public void flush() {
+        persister.flush();
+    }
+
+    public void awaitDurable() {
+        persister.awaitDurable();
+    }
+
+    public void awaitDurable(long seq) {
+        persister.awaitDurable(seq);
+    }
+
+    // Runs the snapshot writer on the persister thread once every record appended so far has
+    // been written, and truncates the journal if it succeeds. Records appended in the meantime
+    // wait in memory and start the next journal.
+    public long scheduleCheckpoint(BooleanSupplier writeSnapshots) {
+        recordCount.set(0);
+        return persister.submitTask(() -> {
+            if (writeSnapshots.getAsBoolean()) {
+                truncate();
+            }
+        });
+    }
+
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    // Records are durable in order, so waiting for the last one covers the whole batch
+    public void endBatch() {
+        if (--batchDepth == 0 && unsyncedSeq != 0) {
+            long seq = unsyncedSeq;
+            unsyncedSeq = 0;
+            persister.awaitDurable(seq);
+        }
+    }
+
+    public void appendPut(HallCollection collection, Object entity) {
+        append(putType(collection), out -> HallDataCodec.writeEntity(out, collection, entity));
+    }
+
+    public void appendDelete(HallCollection collection, String key) {
+        append(deleteType(collection), out -> out.writeString(key));
+    }
+
+    // Encodes the record on the calling thread; the persister thread writes it out later,
+    // except in sync mode where the caller waits until the record is on disk, or until the
+    // end of the outermost batch
+    private void append(byte type, Consumer<CodecWriter> body) {
+        CodecWriter writer = new CodecWriter(false);
+        writer.writeByte(type | CODEC_RECORD);
+        body.accept(writer);
+        long seq = persister.submit(writer.toByteArray());
+        recordCount.incrementAndGet();
+        if (mode == DurabilityMode.SYNC) {
+            if (batchDepth > 0) {
+                unsyncedSeq = seq;
+            } else {
+                persister.awaitDurable(seq);
+            }
+        }
+    }
+
+    // On failure the log is cut back to where the batch started, so a retry never follows a
+    // partly written record
+    private synchronized void writeBatch(List<byte[]> records) throws IOException {
+        long start = System.nanoTime();
+        if (out == null) {
+            fileOut = new FileOutputStream(file, true);
+            out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        }
+        long length = fileOut.getChannel().size();
+        long bytes = 0;
+        boolean synced = mode != DurabilityMode.BUFFERED;
+        try {
+            for (byte[] record : records) {
+                out.writeInt(record.length);
+                out.write(record);
+                bytes += 4 + record.length;
+            }
+            out.flush();
+            if (synced) {
+                fileOut.getFD().sync();
+            }
+        } catch (IOException e) {
+            try {
+                fileOut.getChannel().truncate(length);
+                fileOut.close();
+            } catch (IOException ignored) {
+                // Replay stops at the first torn record, which is the best left to do
+            }
+            out = null;
+            fileOut = null;
+            throw e;
+        }
+        stats.recordJournalFlush(records.size(), bytes, System.nanoTime() - start, synced);
+    }
+
+    public static HallCollection collectionOf(byte type) {
+        switch (type) {
+            case USER_PUT:
+            case USER_DELETE:
+                return HallCollection.USERS;
+            case STUDENT_PUT:
+            case STUDENT_DELETE:
+                return HallCollection.STUDENTS;
+            case ROOM_PUT:
+            case ROOM_DELETE:
+                return HallCollection.ROOMS;
+            case COMPLAINT_PUT:
+            case COMPLAINT_DELETE:
+                return HallCollection.COMPLAINTS;
+            default:
+                return HallCollection.APPOINTMENTS;
+        }
+    }
+
+    private static byte putType(HallCollection collection) {
+        switch (collection) {
+            case USERS: return USER_PUT;
+            case STUDENTS: return STUDENT_PUT;
+            case ROOMS: return ROOM_PUT;
+            case COMPLAINTS: return COMPLAINT_PUT;
+            default: return APPOINTMENT_PUT;
+        }
+    }
+
+    private static byte deleteType(HallCollection collection) {
+        switch (collection) {
+            case USERS: return USER_DELETE;
+            case STUDENTS: return STUDENT_DELETE;
+            case ROOMS: return ROOM_DELETE;
+            case COMPLAINTS: return COMPLAINT_DELETE;
+            default: return APPOINTMENT_DELETE;
+        }
+    }
+
+    public List<JournalRecord> readAll() throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        if (!file.exists()) {
+            return records;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte[] bytes;
+                try {
+                    bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                } catch (EOFException e) {
+                    break; // end of log, or a record cut short by a crash
+                }
+                if ((bytes[0] & CODEC_RECORD) != 0) {
+                    records.add(readRecord(new CodecReader(bytes)));
+                } else {
+                    records.add(readLegacyRecord(new DataInputStream(new ByteArrayInputStream(bytes))));
+                }
+            }
+        }
+        recordCount.set(records.size());
+        return records;
+    }
+
+    private JournalRecord readRecord(CodecReader in) throws IOException {
+        byte type = (byte) (in.readByte() & ~CODEC_RECORD);
+        switch (type) {
+            case USER_PUT:
+            case STUDENT_PUT:
+            case ROOM_PUT:
+            case COMPLAINT_PUT:
+            case APPOINTMENT_PUT: {
+                Object entity = HallDataCodec.readEntity(in, collectionOf(type));
+                return new JournalRecord(type, HallDataCodec.keyOf(entity), entity);
+            }
+            default:
+                return new JournalRecord(type, in.readString(), null);
+        }
+    }
+
+    private JournalRecord readLegacyRecord(DataInputStream data) throws IOException {
+        byte type = data.readByte();
+        String key = readString(data);
+        Object entity = null;
+        switch (type) {
+            case USER_PUT:
+                entity = new User(key, readString(data), readString(data));
+                break;
+            case STUDENT_PUT: {
+                String name = readString(data);
+                String contact = readString(data);
+                int distance = data.readInt();
+                int merit = data.readInt();
+                int income = data.readInt();
+                String roomNumber = readString(data);
+                Student student = new Student(key, name, contact, distance, merit, income, readString(data));
+                student.setRoomNumber(roomNumber);
+                entity = student;
+                break;
+            }
+            case ROOM_PUT: {
+                Room room = new Room(key, data.readInt());
+                int occupantCount = data.readInt();
+                for (int i = 0; i < occupantCount; i++) {
+                    room.getOccupants().add(readString(data));
+                }
+                entity = room;
+                break;
+            }
+            case COMPLAINT_PUT: {
+                Complaint complaint = new Complaint(key, readString(data), readString(data));
+                complaint.setResolved(data.readBoolean());
+                entity = complaint;
+                break;
+            }
+            case APPOINTMENT_PUT: {
+                Appointment appointment = new Appointment(key, readString(data), readString(data),
+                        readString(data), readString(data));
+                appointment.setApproved(data.readBoolean());
+                entity = appointment;
+                break;
+            }
+            default:
+                break;
+        }
+        return new JournalRecord(type, key, entity);
+    }
+
+    // Callers flush() first so no pending record lands in the log after it was cut
+    private synchronized void truncate() {
+        try {
+            if (out != null) {
+                out.close();
+                out = null;
+                fileOut = null;
+            }
+            new FileOutputStream(file).close();
+        } catch (IOException e) {
+            System.err.println("Error truncating journal: " + e.getMessage());
+        }
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        return data.readBoolean() ? data.readUTF() : null;
+    }
+}
+
+// Background Persister
+// Mutators hand over encoded records and return immediately. A single writer thread waits
+// up to the flush window for a burst to finish, then writes the whole group with one flush.
+// Tasks submitted in between run on the same thread, in order with the records around them.
+// A group that fails to write goes back to the head of the queue and is retried; until it is
+// written, anyone waiting for those records gets the error instead.
+class BackgroundPersister {
+    private static final long RETRY_MILLIS = 1000;
+
+    interface BatchWriter {
+        void writeBatch(List<byte[]> records) throws IOException;
+    }
+
+    private BatchWriter writer;
+    private long windowMillis;
+    // Encoded records and Runnable tasks, in submission order
+    private List<Object> pending = new ArrayList<>();
+    private long submittedSeq;
+    private long lastRecordSeq;
+    private long durableSeq;
+    private boolean flushRequested;
+    // Set while records are failing to write, cleared by the next write that succeeds
+    private IOException writeError;
+
+    public BackgroundPersister(BatchWriter writer, long windowMillis) {
+        this.writer = writer;
+        this.windowMillis = windowMillis;
+        Thread thread = new Thread(this::run, "hall-persister");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                flush();
+            } catch (IllegalStateException e) {
+                System.err.println("Error flushing journal on exit: " + e.getMessage());
+            }
+        }));
+    }
+
+    public synchronized long submit(byte[] record) {
+        pending.add(record);
+        submittedSeq++;
+        lastRecordSeq = submittedSeq;
+        notifyAll();
+        return submittedSeq;
+    }
+
+    public synchronized long submitTask(Runnable task) {
+        pending.add(task);
+        submittedSeq++;
+        notifyAll();
+        return submittedSeq;
+    }
+
+    // Writes whatever is pending without waiting for the window to expire. Like awaitDurable()
+    // it waits for records only, not for tasks queued behind them.
+    public void flush() {
+        long target;
+        synchronized (this) {
+            target = lastRecordSeq;
+            if (durableSeq < target) {
+                flushRequested = true;
+                notifyAll();
+            }
+        }
+        awaitDurable(target);
+    }
+
+    public void awaitDurable() {
+        long target;
+        synchronized (this) {
+            target = lastRecordSeq;
+        }
+        awaitDurable(target);
+    }
+
+    // Throws IllegalStateException if the records up to seq could not be written, or if the
+    // caller is interrupted before they are; the interrupt stays set
+    public synchronized void awaitDurable(long seq) {
+        while (durableSeq < seq) {
+            if (writeError != null) {
+                throw new IllegalStateException("Journal write failed: " + writeError.getMessage(), writeError);
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted before the journal was written", e);
+            }
+        }
+    }
+
+    private void run() {
+        while (true) {
+            List<Object> batch;
+            long batchSeq;
+            synchronized (this) {
+                try {
+                    while (pending.isEmpty()) {
+                        wait();
+                    }
+                    long deadline = System.currentTimeMillis() + windowMillis;
+                    long remaining = windowMillis;
+                    while (!flushRequested && remaining > 0) {
+                        wait(remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                batch = pending;
+                batchSeq = submittedSeq;
+                pending = new ArrayList<>();
+                flushRequested = false;
+            }
+            List<byte[]> records = new ArrayList<>();
+            // Where the records not yet written start, so a failure can put them back
+            int unwritten = 0;
+            long seq = batchSeq - batch.size();
+            boolean failed = false;
+            for (int i = 0; i < batch.size() && !failed; i++) {
+                Object item = batch.get(i);
+                if (item instanceof Runnable) {
+                    if (writeRecords(records)) {
+                        records = new ArrayList<>();
+                        markDurable(seq); // nobody waiting on the records should wait for the task too
+                        runTask((Runnable) item);
+                        unwritten = i + 1;
+                    } else {
+                        failed = true;
+                    }
+                } else {
+                    records.add((byte[]) item);
+                }
+                seq++;
+            }
+            if (!failed && writeRecords(records)) {
+                markDurable(batchSeq);
+            } else {
+                requeue(batch.subList(unwritten, batch.size()));
+            }
+        }
+    }
+
+    // Puts the items back in front of anything submitted since, then waits before retrying
+    private void requeue(List<Object> items) {
+        synchronized (this) {
+            pending.addAll(0, items);
+        }
+        try {
+            Thread.sleep(RETRY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void markDurable(long seq) {
+        durableSeq = seq;
+        notifyAll();
+    }
+
+    private boolean writeRecords(List<byte[]> records) {
+        if (records.isEmpty()) {
+            return true;
+        }
+        try {
+            writer.writeBatch(records);
+        } catch (IOException e) {
+            synchronized (this) {
+                // Reported once per run of failures, not on every retry
+                if (writeError == null) {
+                    System.err.println("Error writing journal, will retry: " + e.getMessage());
+                }
+                writeError = e;
+                notifyAll();
+            }
+            return false;
+        }
+        synchronized (this) {
+            if (writeError != null) {
+                System.err.println("Journal writes resumed");
+                writeError = null;
+            }
+        }
+        return true;
+    }
+
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            System.err.println("Error in background task: " + e.getMessage());
+        }
+    }
+}
+
+// Seat Allocator
+class SeatAllocator {
+    // Plans every placement, then applies them as one change; rooms are filled in list order
+    public static AllocationReport allocateSeats(HallManagementSystem system) {
+        return allocateSeats(system, FitPolicy.FIRST_FIT);
+    }
+
+    public static AllocationReport allocateSeats(HallManagementSystem system, FitPolicy policy) {
+        return allocateSeats(system, policy, null);
+    }
+
+    // Without a scoring model students are ranked by distance, then merit, then income
+    public static AllocationReport allocateSeats(HallManagementSystem system, FitPolicy policy, ScoringModel model) {
+        return system.applySeatAssignments(plan(system, policy, model));
+    }
+
+    public static AllocationPlan plan(HallManagementSystem system, FitPolicy policy) {
+        return plan(system, policy, null);
+    }
+
+    // Works out placements in memory; nothing is changed yet
+    public static AllocationPlan plan(HallManagementSystem system, FitPolicy policy, ScoringModel model) {
+        return plan(system.getStudents(), system.getRooms(), policy, model);
+    }
+
+    // Plans against a snapshot on the calling thread, which need not be the one making changes;
+    // nothing is written, and the preview can be committed with applySeatAssignments or dropped
+    @SuppressWarnings("unchecked")
+    public static AllocationPreview preview(HallManagementSystem system, FitPolicy policy, ScoringModel model) {
+        long version = system.getSnapshotVersion();
+        Map<HallCollection, List<?>> snapshot = system.getSnapshot(HallCollection.STUDENTS, HallCollection.ROOMS);
+        List<Student> students = (List<Student>) snapshot.get(HallCollection.STUDENTS);
+        List<Room> rooms = (List<Room>) snapshot.get(HallCollection.ROOMS);
+        return new AllocationPreview(plan(students, rooms, policy, model), students, rooms, version);
+    }
+
+    private static AllocationPlan plan(List<Student> students, List<Room> rooms, FitPolicy policy, ScoringModel model) {
+        long start = System.nanoTime();
+        List<Student> unassigned = students.stream()
+                .filter(s -> s.getRoomNumber() == null)
+                .collect(Collectors.toList());
+        List<Student> unassignedStudents = model == null
+                ? PriorityOrder.sort(unassigned)
+                : ScoredRanking.rank(unassigned, model);
+
+        AllocationPlan plan = policy == FitPolicy.PREFERENCES
+                ? new PreferenceAllocator().plan(unassignedStudents, rooms)
+                : new AllocationEngine(policy).plan(unassignedStudents, rooms);
+        plan.setPlanMillis((System.nanoTime() - start) / 1_000_000);
+        return plan;
+    }
+}
+
+// Priority Order
+// Ranks students for allocation: farthest first, then merit position, then father's income.
+// Each field is rebased to its smallest value and given only as many bits as its range needs,
+// so the three fit in one long whose unsigned order is the ranking; an LSD radix sort over those
+// keys then ranks 100k students in a handful of passes without boxing anything. Ranges too wide
+// to share 64 bits fall back to the comparator.
+class PriorityOrder {
+    private static final int DIGIT_BITS = 8;
+    private static final int RADIX = 1 << DIGIT_BITS;
+    public static final Comparator<Student> COMPARATOR = Comparator.comparingInt(Student::getDistance).reversed()
+            .thenComparingInt(Student::getMerit)
+            .thenComparingInt(Student::getFatherMonthlyIncome);
+
+    // Stable: students with equal keys keep their order in the list
+    public static List<Student> sort(List<Student> students) {
+        int n = students.size();
+        long minDistance = Long.MAX_VALUE, maxDistance = Long.MIN_VALUE;
+        long minMerit = Long.MAX_VALUE, maxMerit = Long.MIN_VALUE;
+        long minIncome = Long.MAX_VALUE, maxIncome = Long.MIN_VALUE;
+        for (Student s : students) {
+            minDistance = Math.min(minDistance, s.getDistance());
+            maxDistance = Math.max(maxDistance, s.getDistance());
+            minMerit = Math.min(minMerit, s.getMerit());
+            maxMerit = Math.max(maxMerit, s.getMerit());
+            minIncome = Math.min(minIncome, s.getFatherMonthlyIncome());
+            maxIncome = Math.max(maxIncome, s.getFatherMonthlyIncome());
+        }
+        if (n < 2) {
+            return new ArrayList<>(students);
+        }
+        int incomeBits = bitsFor(maxIncome - minIncome);
+        int meritBits = bitsFor(maxMerit - minMerit);
+        int keyBits = bitsFor(maxDistance - minDistance) + meritBits + incomeBits;
+        if (keyBits > Long.SIZE) {
+            List<Student> sorted = new ArrayList<>(students);
+            sorted.sort(COMPARATOR);
+            return sorted;
+        }
+
+        long[] keys = new long[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            Student s = students.get(i);
+            // Distance counts down from the farthest, so the farthest student gets the smallest key
+            keys[i] = (maxDistance - s.getDistance()) << (meritBits + incomeBits)
+                    | (s.getMerit() - minMerit) << incomeBits
+                    | (s.getFatherMonthlyIncome() - minIncome);
+            order[i] = i;
+        }
+        order = radixSort(keys, order, keyBits);
+
+        List<Student> sorted = new ArrayList<>(n);
+        for (int i : order) {
+            sorted.add(students.get(i));
+        }
+        return sorted;
+    }
+
+    private static int bitsFor(long range) {
+        return Long.SIZE - Long.numberOfLeadingZeros(range);
+    }
+
+    // Sorts keys and their positions together, one digit per pass from the lowest; only the
+    // digits the keys actually use are visited
+    private static int[] radixSort(long[] keys, int[] order, int keyBits) {
+        int n = keys.length;
+        long[] keyBuffer = new long[n];
+        int[] orderBuffer = new int[n];
+        int[] counts = new int[RADIX];
+        for (int shift = 0; shift < keyBits; shift += DIGIT_BITS) {
+            Arrays.fill(counts, 0);
+            for (long key : keys) {
+                counts[(int) (key >>> shift) & (RADIX - 1)]++;
+            }
+            for (int digit = 1; digit < RADIX; digit++) {
+                counts[digit] += counts[digit - 1];
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                int at = --counts[(int) (keys[i] >>> shift) & (RADIX - 1)];
+                keyBuffer[at] = keys[i];
+                orderBuffer[at] = order[i];
+            }
+            long[] swapKeys = keys;
+            keys = keyBuffer;
+            keyBuffer = swapKeys;
+            int[] swapOrder = order;
+            order = orderBuffer;
+            orderBuffer = swapOrder;
+        }
+        return order;
+    }
+}
+
+// Scoring Model
+// Weights for ranking applicants by one score instead of the fixed distance, merit, income order.
+// Each factor is scaled to 0..1 across the students being ranked, farther, better placed on the
+// merit list and poorer scoring higher, so a weight says how much that factor counts against the
+// others. A department quota is how many of its students may rank ahead of those over quota.
+class ScoringModel {
+    private double distanceWeight;
+    private double meritWeight;
+    private double incomeWeight;
+    private Map<String, Integer> departmentQuotas = new HashMap<>();
+
+    public ScoringModel(double distanceWeight, double meritWeight, double incomeWeight) {
+        if (distanceWeight < 0 || meritWeight < 0 || incomeWeight < 0) {
+            throw new IllegalArgumentException("Weights cannot be negative");
+        }
+        this.distanceWeight = distanceWeight;
+        this.meritWeight = meritWeight;
+        this.incomeWeight = incomeWeight;
+    }
+
+    public void setDepartmentQuota(String department, int seats) {
+        if (seats < 0) throw new IllegalArgumentException("Quota cannot be negative: " + department);
+        departmentQuotas.put(department, seats);
+    }
+
+    public double getDistanceWeight() { return distanceWeight; }
+    public double getMeritWeight() { return meritWeight; }
+    public double getIncomeWeight() { return incomeWeight; }
+    public Map<String, Integer> getDepartmentQuotas() { return departmentQuotas; }
+}
+
+// Scored Ranking
+// Ranks students by a ScoringModel. Scores are computed by a fork-join task over a snapshot array,
+// each from its own student alone, so however the work is split every score comes out bit for bit
+// the same; ties go to the smaller student id, which makes the order identical whether it was
+// computed on one thread or many.
+class ScoredRanking {
+    // Below this many students a task scores its range itself instead of splitting it
+    private static final int SPLIT_THRESHOLD = 4096;
+
+    private static class Scored {
+        private Student student;
+        private double score;
+
+        Scored(Student student, double score) {
+            this.student = student;
+            this.score = score;
+        }
+    }
+
+    private static class ScoreTask extends RecursiveAction {
+        private Student[] students;
+        private Scored[] scored;
+        private ScoringModel model;
+        private int[] bounds;
+        private int from;
+        private int to;
+
+        ScoreTask(Student[] students, Scored[] scored, ScoringModel model, int[] bounds, int from, int to) {
+            this.students = students;
+            this.scored = scored;
+            this.model = model;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    scored[i] = new Scored(students[i], score(students[i], model, bounds));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ScoreTask(students, scored, model, bounds, from, middle),
+                    new ScoreTask(students, scored, model, bounds, middle, to));
+        }
+    }
+
+    public static List<Student> rank(List<Student> students, ScoringModel model) {
+        return rank(students, model, ForkJoinPool.commonPool());
+    }
+
+    public static List<Student> rank(List<Student> students, ScoringModel model, ForkJoinPool pool) {
+        Student[] snapshot = students.toArray(new Student[0]);
+        // min and max of distance, merit and income, in that order
+        int[] bounds = {Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (Student s : snapshot) {
+            bounds[0] = Math.min(bounds[0], s.getDistance());
+            bounds[1] = Math.max(bounds[1], s.getDistance());
+            bounds[2] = Math.min(bounds[2], s.getMerit());
+            bounds[3] = Math.max(bounds[3], s.getMerit());
+            bounds[4] = Math.min(bounds[4], s.getFatherMonthlyIncome());
+            bounds[5] = Math.max(bounds[5], s.getFatherMonthlyIncome());
+        }
+        Scored[] scored = new Scored[snapshot.length];
+        pool.invoke(new ScoreTask(snapshot, scored, model, bounds, 0, snapshot.length));
+        Arrays.parallelSort(scored, Comparator.<Scored>comparingDouble(s -> -s.score)
+                .thenComparing(s -> s.student.getId()));
+
+        // Students over their department's quota keep their order but go after everyone else
+        Map<String, Integer> taken = new HashMap<>();
+        List<Student> ranked = new ArrayList<>(scored.length);
+        List<Student> overQuota = new ArrayList<>();
+        for (Scored s : scored) {
+            Integer quota = model.getDepartmentQuotas().get(s.student.getDepartment());
+            if (quota != null && taken.merge(s.student.getDepartment(), 1, Integer::sum) > quota) {
+                overQuota.add(s.student);
+            } else {
+                ranked.add(s.student);
+            }
+        }
+        ranked.addAll(overQuota);
+        return ranked;
+    }
+
+    private static double score(Student s, ScoringModel model, int[] bounds) {
+        return model.getDistanceWeight() * scaled((long) s.getDistance() - bounds[0], (long) bounds[1] - bounds[0])
+                + model.getMeritWeight() * scaled((long) bounds[3] - s.getMerit(), (long) bounds[3] - bounds[2])
+                + model.getIncomeWeight() * scaled((long) bounds[5] - s.getFatherMonthlyIncome(), (long) bounds[5] - bounds[4]);
+    }
+
+    private static double scaled(long value, long range) {
+        return range == 0 ? 0 : (double) value / range;
+    }
+}
+
+// Fit Policy
+// Which room the allocation engine hands the next student
+enum FitPolicy {
+    FIRST_FIT("First fit (rooms in list order)"),
+    BEST_FIT("Best fit (fill partly filled rooms first)"),
+    SPREAD_EVENLY("Spread evenly (emptiest rooms first)"),
+    PREFERENCES("Room preferences (optimal, min-cost flow)");
+
+    private String label;
+
+    FitPolicy(String label) {
+        this.label = label;
+    }
+
+    @Override
+    public String toString() { return label; }
+}
+
+// Allocation Engine
+// Rooms with a free seat wait in a heap ordered by the fit policy. Each student takes the room
+// on top, which goes back in if it still has a seat left, so placing S students in R rooms
+// costs O((S + R) log R) once the students are sorted.
+class AllocationEngine {
+    private static class Slot {
+        private String roomNumber;
+        private int capacity;
+        private int occupied;
+        private int order;
+
+        Slot(Room room, int order) {
+            this.roomNumber = room.getRoomNumber();
+            this.capacity = room.getCapacity();
+            this.occupied = room.getOccupants().size();
+            this.order = order;
+        }
+
+        int free() { return capacity - occupied; }
+    }
+
+    private FitPolicy policy;
+
+    public AllocationEngine(FitPolicy policy) {
+        this.policy = policy;
+    }
+
+    // Students are placed in the order given; the rooms are only read
+    public AllocationPlan plan(List<Student> students, List<Room> rooms) {
+        PriorityQueue<Slot> heap = new PriorityQueue<>(Math.max(1, rooms.size()), comparator());
+        for (int i = 0; i < rooms.size(); i++) {
+            Slot slot = new Slot(rooms.get(i), i);
+            if (slot.free() > 0) {
+                heap.add(slot);
+            }
+        }
+        AllocationPlan plan = new AllocationPlan();
+        for (Student student : students) {
+            Slot slot = heap.poll();
+            if (slot == null) {
+                plan.addUnplaced(student.getId()); // every room is full
+                continue;
+            }
+            slot.occupied++;
+            plan.addAssignment(student.getId(), slot.roomNumber);
+            if (slot.free() > 0) {
+                heap.add(slot);
+            }
+        }
+        return plan;
+    }
+
+    private Comparator<Slot> comparator() {
+        Comparator<Slot> listOrder = Comparator.comparingInt(s -> s.order);
+        switch (policy) {
+            case FIRST_FIT:
+                return listOrder;
+            case BEST_FIT:
+                return Comparator.<Slot>comparingInt(Slot::free).thenComparing(listOrder);
+            case SPREAD_EVENLY:
+                // Lowest share of seats taken first, compared without division
+                return ((Comparator<Slot>) (a, b) -> Long.compare((long) a.occupied * b.capacity, (long) b.occupied * a.capacity))
+                        .thenComparing(Comparator.<Slot>comparingInt(Slot::free).reversed())
+                        .thenComparing(listOrder);
+            default:
+                throw new IllegalArgumentException(policy + " is not planned with a room heap");
+        }
+    }
+}
+
+// Preference Allocator
+// Places students by their room preferences, solved as a min-cost flow. Seats go to the same
+// students the greedy engine would seat, the first ones in priority order; the flow only decides
+// where each of them goes. The network runs source -> student -> preference -> room -> sink. A
+// student links to one shared node per distinct preference, which is a room number or the start
+// of one for a whole block ("R1" covers R101 and R102), and to one "any room" node, so edges
+// grow with preferences rather than students times rooms. Rooms matched by exactly the same
+// preferences are interchangeable and share one node holding all their free seats. Missing the k-th choice costs k times
+// the student's weight, and weights fall with priority, so a higher-ranked student's choice
+// counts for more than a lower-ranked one's. Students are added one at a time, each with a
+// Dijkstra search over reduced costs that stops at the first seat it can reach.
+class PreferenceAllocator {
+    public static final int MAX_PREFERENCES = 3;
+
+    // Adjacency lists as parallel arrays; edge e and its reverse e ^ 1 are added together
+    private int[] head;
+    private int[] next = new int[64];
+    private int[] to = new int[64];
+    private int[] capacity = new int[64];
+    private long[] cost = new long[64];
+    private int edgeCount;
+
+    // Students are given in priority order; the rooms are only read
+    public AllocationPlan plan(List<Student> students, List<Room> rooms) {
+        // Rooms with a free seat, sorted so a block preference finds its rooms as one range
+        TreeMap<String, Room> open = new TreeMap<>();
+        int seats = 0;
+        for (Room room : rooms) {
+            int free = room.getCapacity() - room.getOccupants().size();
+            if (free > 0) {
+                open.put(room.getRoomNumber(), room);
+                seats += free;
+            }
+        }
+        int placed = Math.min(students.size(), seats);
+
+        // Nodes: students, then preferences, then "any room", then room classes, then the sink
+        Map<String, Integer> preferenceNodes = new HashMap<>();
+        for (int i = 0; i < placed; i++) {
+            for (String preference : choicesOf(students.get(i))) {
+                preferenceNodes.putIfAbsent(preference, placed + preferenceNodes.size());
+            }
+        }
+        int any = placed + preferenceNodes.size();
+        Map<String, List<Integer>> matchedBy = new HashMap<>();
+        for (Map.Entry<String, Integer> preference : preferenceNodes.entrySet()) {
+            String prefix = preference.getKey();
+            for (String roomNumber : open.subMap(prefix, true, prefix + Character.MAX_VALUE, false).keySet()) {
+                matchedBy.computeIfAbsent(roomNumber, k -> new ArrayList<>()).add(preference.getValue());
+            }
+        }
+        // A room class hands out its free seats room by room, in room number order
+        Map<List<Integer>, Integer> classOf = new HashMap<>();
+        List<List<Integer>> classPreferences = new ArrayList<>();
+        List<Deque<String>> classSeats = new ArrayList<>();
+        for (Room room : open.values()) {
+            List<Integer> matches = matchedBy.getOrDefault(room.getRoomNumber(), Collections.emptyList());
+            Collections.sort(matches);
+            Integer roomClass = classOf.get(matches);
+            if (roomClass == null) {
+                roomClass = classSeats.size();
+                classOf.put(matches, roomClass);
+                classPreferences.add(matches);
+                classSeats.add(new ArrayDeque<>());
+            }
+            for (int seat = room.getOccupants().size(); seat < room.getCapacity(); seat++) {
+                classSeats.get(roomClass).add(room.getRoomNumber());
+            }
+        }
+        int sink = any + 1 + classSeats.size();
+        head = new int[sink + 1];
+        Arrays.fill(head, -1);
+        edgeCount = 0;
+
+        for (int roomClass = 0; roomClass < classSeats.size(); roomClass++) {
+            int classNode = any + 1 + roomClass;
+            addEdge(classNode, sink, classSeats.get(roomClass).size(), 0);
+            addEdge(any, classNode, placed, 0);
+            for (int preferenceNode : classPreferences.get(roomClass)) {
+                addEdge(preferenceNode, classNode, placed, 0);
+            }
+        }
+        for (int i = 0; i < placed; i++) {
+            List<String> choices = choicesOf(students.get(i));
+            long weight = placed - i;
+            for (int k = 0; k < choices.size(); k++) {
+                addEdge(i, preferenceNodes.get(choices.get(k)), 1, k * weight);
+            }
+            // Students without preferences are happy anywhere
+            addEdge(i, any, 1, choices.isEmpty() ? 0 : MAX_PREFERENCES * weight);
+        }
+
+        long[] potential = new long[sink + 1];
+        long[] dist = new long[sink + 1];
+        Arrays.fill(dist, Long.MAX_VALUE);
+        int[] via = new int[sink + 1];
+        boolean[] done = new boolean[sink + 1];
+        int[] reached = new int[sink + 1];
+        SearchHeap heap = new SearchHeap();
+        for (int s = 0; s < placed; s++) {
+            // Nothing flows into a new student yet, so its potential can be raised until none of
+            // its edges has a negative reduced cost
+            long start = Long.MIN_VALUE;
+            for (int e = head[s]; e >= 0; e = next[e]) {
+                start = Math.max(start, potential[to[e]] - cost[e]);
+            }
+            potential[s] = start;
+
+            int reachedCount = 0;
+            dist[s] = 0;
+            reached[reachedCount++] = s;
+            heap.push(0, s);
+            while (!heap.isEmpty()) {
+                int u = heap.pop();
+                if (done[u]) {
+                    continue;
+                }
+                done[u] = true;
+                if (u == sink) {
+                    break;
+                }
+                for (int e = head[u]; e >= 0; e = next[e]) {
+                    int v = to[e];
+                    if (capacity[e] == 0 || done[v]) {
+                        continue;
+                    }
+                    long d = dist[u] + cost[e] + potential[u] - potential[v];
+                    if (d < dist[v]) {
+                        if (dist[v] == Long.MAX_VALUE) {
+                            reached[reachedCount++] = v;
+                        }
+                        dist[v] = d;
+                        via[v] = e;
+                        heap.push(d, v);
+                    }
+                }
+            }
+            if (!done[sink]) {
+                throw new IllegalStateException("No free seat left for " + students.get(s).getId());
+            }
+            for (int v = sink; v != s; v = to[via[v] ^ 1]) {
+                capacity[via[v]]--;
+                capacity[via[v] ^ 1]++;
+            }
+            // Shifting settled nodes by dist - D keeps every reduced cost non-negative, and nodes
+            // the search never settled keep theirs, so this round costs only what it visited
+            long found = dist[sink];
+            for (int i = 0; i < reachedCount; i++) {
+                int v = reached[i];
+                if (done[v]) {
+                    potential[v] += dist[v] - found;
+                }
+                dist[v] = Long.MAX_VALUE;
+                done[v] = false;
+            }
+            heap.clear();
+        }
+
+        // Flow through a preference node is interchangeable, so the room classes it feeds are
+        // dealt out in turn to the students whose flow arrives there
+        List<Deque<Integer>> classesVia = new ArrayList<>();
+        for (int node = placed; node <= any; node++) {
+            Deque<Integer> classesOfNode = new ArrayDeque<>();
+            for (int e = head[node]; e >= 0; e = next[e]) {
+                if ((e & 1) == 0) {
+                    for (int f = 0; f < capacity[e ^ 1]; f++) {
+                        classesOfNode.add(to[e] - any - 1);
+                    }
+                }
+            }
+            classesVia.add(classesOfNode);
+        }
+        AllocationPlan plan = new AllocationPlan();
+        for (int i = 0; i < placed; i++) {
+            for (int e = head[i]; e >= 0; e = next[e]) {
+                if ((e & 1) == 0 && capacity[e] == 0) {
+                    int roomClass = classesVia.get(to[e] - placed).poll();
+                    plan.addAssignment(students.get(i).getId(), classSeats.get(roomClass).poll());
+                    break;
+                }
+            }
+        }
+        for (int i = placed; i < students.size(); i++) {
+            plan.addUnplaced(students.get(i).getId());
+        }
+        return plan;
+    }
+
+    private static List<String> choicesOf(Student student) {
+        List<String> preferences = student.getRoomPreferences();
+        return preferences.size() > MAX_PREFERENCES ? preferences.subList(0, MAX_PREFERENCES) : preferences;
+    }
+
+    private void addEdge(int from, int target, int edgeCapacity, long edgeCost) {
+        if (edgeCount + 2 > to.length) {
+            next = Arrays.copyOf(next, to.length * 2);
+            capacity = Arrays.copyOf(capacity, to.length * 2);
+            cost = Arrays.copyOf(cost, to.length * 2);
+            to = Arrays.copyOf(to, to.length * 2);
+        }
+        link(from, target, edgeCapacity, edgeCost);
+        link(target, from, 0, -edgeCost);
+    }
+
+    private void link(int from, int target, int edgeCapacity, long edgeCost) {
+        to[edgeCount] = target;
+        capacity[edgeCount] = edgeCapacity;
+        cost[edgeCount] = edgeCost;
+        next[edgeCount] = head[from];
+        head[from] = edgeCount++;
+    }
+
+    // Binary min-heap of (distance, node) pairs; stale entries are skipped by the caller. Equal
+    // distances pop the higher node first, and nodes are numbered towards the sink, so a search
+    // whose seat is as close as everything else does not settle the whole tied region first.
+    private static class SearchHeap {
+        private long[] keys = new long[64];
+        private int[] nodes = new int[64];
+        private int size;
+
+        void push(long key, int node) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            int i = size++;
+            while (i > 0 && before(key, node, keys[(i - 1) / 2], nodes[(i - 1) / 2])) {
+                keys[i] = keys[(i - 1) / 2];
+                nodes[i] = nodes[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            keys[i] = key;
+            nodes[i] = node;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            long key = keys[--size];
+            int node = nodes[size];
+            int i = 0;
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && before(keys[child + 1], nodes[child + 1], keys[child], nodes[child])) {
+                    child++;
+                }
+                if (!before(keys[child], nodes[child], key, node)) {
+                    break;
+                }
+                keys[i] = keys[child];
+                nodes[i] = nodes[child];
+                i = child;
+            }
+            keys[i] = key;
+            nodes[i] = node;
+            return top;
+        }
+
+        boolean isEmpty() { return size == 0; }
+
+        void clear() { size = 0; }
+
+        private static boolean before(long key, int node, long otherKey, int otherNode) {
+            return key < otherKey || (key == otherKey && node > otherNode);
+        }
+    }
+}
+
+// Seat Assignment
+class SeatAssignment {
+    private String studentId;
+    private String roomNumber;
+
+    public SeatAssignment(String studentId, String roomNumber) {
+        this.studentId = studentId;
+        this.roomNumber = roomNumber;
+    }
+
+    public String getStudentId() { return studentId; }
+    public String getRoomNumber() { return roomNumber; }
+}
+
+// Allocation Plan
+// Placements worked out in memory, before anything is applied
+class AllocationPlan {
+    private List<SeatAssignment> assignments = new ArrayList<>();
+    private List<String> unplaced = new ArrayList<>();
+    private long planMillis;
+
+    public void addAssignment(String studentId, String roomNumber) {
+        assignments.add(new SeatAssignment(studentId, roomNumber));
+    }
+
+    public void addUnplaced(String studentId) {
+        unplaced.add(studentId);
+    }
+
+    public List<SeatAssignment> getAssignments() { return assignments; }
+    public List<String> getUnplaced() { return unplaced; }
+    public long getPlanMillis() { return planMillis; }
+    public void setPlanMillis(long planMillis) { this.planMillis = planMillis; }
+}
+
+// Allocation Preview
+// A plan worked out against a snapshot, with what it would change: who goes where, who is left
+// without a seat and which rooms would stay empty. Nothing is applied until it is committed.
+class AllocationPreview {
+    private AllocationPlan plan;
+    private Map<String, Student> studentsById = new HashMap<>();
+    private List<String> emptyRooms = new ArrayList<>();
+    private long snapshotVersion;
+
+    public AllocationPreview(AllocationPlan plan, List<Student> students, List<Room> rooms, long snapshotVersion) {
+        this.plan = plan;
+        this.snapshotVersion = snapshotVersion;
+        for (Student student : students) {
+            studentsById.put(student.getId(), student);
+        }
+        Set<String> filled = new HashSet<>();
+        for (SeatAssignment assignment : plan.getAssignments()) {
+            filled.add(assignment.getRoomNumber());
+        }
+        for (Room room : rooms) {
+            if (room.getOccupants().isEmpty() && !filled.contains(room.getRoomNumber())) {
+                emptyRooms.add(room.getRoomNumber());
+            }
         }
     }
+
+    public AllocationPlan getPlan() { return plan; }
+    public List<String> getEmptyRooms() { return emptyRooms; }
+    public long getSnapshotVersion() { return snapshotVersion; }
+
+    // As of the snapshot; null for an id it did not hold
+    public Student getStudent(String id) {
+        return studentsById.get(id);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d students would be placed, %d left without a seat, %d rooms left empty",
+                plan.getAssignments().size(), plan.getUnplaced().size(), emptyRooms.size());
+    }
 }
 
-// Seat Allocator
-class SeatAllocator {
-    public static void allocateSeats(HallManagementSystem system) {
-        List<Student> unassignedStudents = system.getStudents().stream()
-                .filter(s -> s.getRoomNumber() == null)
-                .sorted(Comparator.comparingInt(Student::getDistance).reversed()
-                        .thenComparingInt(Student::getMerit)
-                        .thenComparingInt(Student::getFatherMonthlyIncome))
-                .collect(Collectors.toList());
+// Allocation Report
+// What an applied plan placed and how long planning, applying and persisting took
+class AllocationReport {
+    private AllocationPlan plan;
+    private long applyMillis;
+    private long persistMillis;
+
+    public AllocationReport(AllocationPlan plan, long applyMillis, long persistMillis) {
+        this.plan = plan;
+        this.applyMillis = applyMillis;
+        this.persistMillis = persistMillis;
+    }
 
-        for (Student student : unassignedStudents) {
-            for (Room room : system.getRooms()) {
-                try {
-                    system.assignSeat(student.getId(), room.getRoomNumber());
-                    break;
-                } catch (IllegalStateException ignored) {
-                    // Room is full, try next room
-                }
-            }
-        }
+    public AllocationPlan getPlan() { return plan; }
+    public int getAssigned() { return plan.getAssignments().size(); }
+    public int getUnplaced() { return plan.getUnplaced().size(); }
+    public long getPlanMillis() { return plan.getPlanMillis(); }
+    public long getApplyMillis() { return applyMillis; }
+    public long getPersistMillis() { return persistMillis; }
+
+    @Override
+    public String toString() {
+        return String.format("%d students assigned, %d without a seat (plan %d ms, apply %d ms, persist %d ms)",
+                getAssigned(), getUnplaced(), getPlanMillis(), applyMillis, persistMillis);
     }
 }
 
@@ -1243,7 +5628,7 @@ class SignupPanel extends JPanel {
                     JOptionPane.showMessageDialog(this, "Invalid ID format (e.g., S003)");
                     return;
                 }
-                if (system.getStudent(id) != null) {
+                if (system.getStudent(id) != null || system.userExists(id)) {
                     JOptionPane.showMessageDialog(this, "Student ID already exists");
                     return;
                 }
@@ -1289,8 +5674,12 @@ class SignupPanel extends JPanel {
                     JOptionPane.showMessageDialog(this, "Password cannot be empty");
                     return;
                 }
-                system.addStudent(new Student(id, name, contact, distance, merit, income, department));
+                // Signing up asks for a seat; the student is placed at once if one is free
+                Student student = new Student(id, name, contact, distance, merit, income, department);
+                student.setSeatRequested(true);
+                system.addStudent(student);
                 system.addUser(new User(id, password, "student"));
+                system.awaitDurable();
                 JOptionPane.showMessageDialog(this, "Signup successful! Please login with ID: " + id);
                 onSignupSuccess.run();
             } catch (NumberFormatException ex) {
@@ -1524,28 +5913,26 @@ class AdminDashboardPanel extends JPanel {
         gbc.gridy = 1;
         add(titleLabel, gbc);
 
-        JPanel studentsCard = createMetricCard("Total Students", system.getStudents().size());
+        HallStats stats = system.getHallStats();
+        JPanel studentsCard = createMetricCard("Total Students", stats.getTotalStudents());
         gbc.gridy = 2;
         gbc.gridwidth = 1;
         add(studentsCard, gbc);
 
-        JPanel occupiedRoomsCard = createMetricCard("Occupied Rooms",
-                system.getRooms().stream().filter(r -> !r.getOccupants().isEmpty()).count());
+        JPanel occupiedRoomsCard = createMetricCard("Occupied Rooms", stats.getOccupiedRooms());
         gbc.gridx = 1;
         add(occupiedRoomsCard, gbc);
 
-        JPanel totalRoomsCard = createMetricCard("Total Rooms", system.getRooms().size());
+        JPanel totalRoomsCard = createMetricCard("Total Rooms", stats.getTotalRooms());
         gbc.gridx = 0;
         gbc.gridy = 3;
         add(totalRoomsCard, gbc);
 
-        JPanel complaintsCard = createMetricCard("Open Complaints",
-                system.getComplaints().stream().filter(c -> !c.isResolved()).count());
+        JPanel complaintsCard = createMetricCard("Open Complaints", stats.getOpenComplaints());
         gbc.gridx = 1;
         add(complaintsCard, gbc);
 
-        JPanel appointmentsCard = createMetricCard("Pending Appointments",
-                system.getAppointments().stream().filter(a -> !a.isApproved()).count());
+        JPanel appointmentsCard = createMetricCard("Pending Appointments", stats.getPendingAppointments());
         gbc.gridx = 0;
         gbc.gridy = 4;
         add(appointmentsCard, gbc);
@@ -1605,14 +5992,12 @@ class AdminDashboardPanel extends JPanel {
     }
 
     public void updateDashboard() {
-        totalStudentsLabel.setText(String.valueOf(system.getStudents().size()));
-        occupiedRoomsLabel.setText(String.valueOf(
-                system.getRooms().stream().filter(r -> !r.getOccupants().isEmpty()).count()));
-        totalRoomsLabel.setText(String.valueOf(system.getRooms().size()));
-        complaintsLabel.setText(String.valueOf(
-                system.getComplaints().stream().filter(c -> !c.isResolved()).count()));
-        appointmentsLabel.setText(String.valueOf(
-                system.getAppointments().stream().filter(a -> !a.isApproved()).count()));
+        HallStats stats = system.getHallStats();
+        totalStudentsLabel.setText(String.valueOf(stats.getTotalStudents()));
+        occupiedRoomsLabel.setText(String.valueOf(stats.getOccupiedRooms()));
+        totalRoomsLabel.setText(String.valueOf(stats.getTotalRooms()));
+        complaintsLabel.setText(String.valueOf(stats.getOpenComplaints()));
+        appointmentsLabel.setText(String.valueOf(stats.getPendingAppointments()));
     }
 }
 
@@ -1670,12 +6055,17 @@ class StudentDashboardPanel extends JPanel {
         add(complaintsCard, gbc);
 
         JPanel appointmentsCard = createMetricCard("Approved Appointments",
-                system.getStudentAppointments(studentId).stream().filter(Appointment::isApproved).count());
+                system.getStudentAppointments(studentId, true).size());
         gbc.gridx = 1;
         add(appointmentsCard, gbc);
 
-        JPanel seatRequestCard = createMetricCard("Seat Status",
-                student != null && student.getRoomNumber() != null ? "Assigned" : "Pending/Request Seat");
+        String seatStatus = "Pending/Request Seat";
+        if (student != null && student.getRoomNumber() != null) {
+            seatStatus = "Assigned";
+        } else if (student != null && student.isSeatRequested()) {
+            seatStatus = "Waitlisted (#" + system.getWaitlistPosition(studentId) + ")";
+        }
+        JPanel seatRequestCard = createMetricCard("Seat Status", seatStatus);
         gbc.gridx = 0;
         gbc.gridy = 4;
         add(seatRequestCard, gbc);
@@ -1684,7 +6074,17 @@ class StudentDashboardPanel extends JPanel {
             JButton requestSeatButton = new JButton("Request Seat");
             styleButton(requestSeatButton);
             requestSeatButton.addActionListener(e -> {
-                JOptionPane.showMessageDialog(this, "Seat request submitted. Admin will allocate a seat.");
+                try {
+                    String roomNumber = system.requestSeat(studentId);
+                    if (roomNumber != null) {
+                        JOptionPane.showMessageDialog(this, "Seat assigned: room " + roomNumber);
+                    } else {
+                        JOptionPane.showMessageDialog(this, "No seat is free right now. You are number "
+                                + system.getWaitlistPosition(studentId) + " on the waitlist and will be placed as soon as one frees up.");
+                    }
+                } catch (IllegalStateException ex) {
+                    JOptionPane.showMessageDialog(this, ex.getMessage());
+                }
             });
             gbc.gridx = 1;
             gbc.gridy = 4;
@@ -1777,12 +6177,52 @@ class StudentProfilePanel extends JPanel {
             JLabel roomLabel = new JLabel("Room: " + (student.getRoomNumber() != null ? student.getRoomNumber() : "None"));
             roomLabel.setFont(new Font("Roboto", Font.PLAIN, 16));
             add(roomLabel);
+
+            JLabel preferencesLabel = new JLabel("Room Preferences: " + describePreferences(student.getRoomPreferences()));
+            preferencesLabel.setFont(new Font("Roboto", Font.PLAIN, 16));
+            add(preferencesLabel);
+
+            JButton preferencesButton = new JButton("Set Room Preferences");
+            styleButton(preferencesButton);
+            preferencesButton.addActionListener(e -> {
+                String input = JOptionPane.showInputDialog(this,
+                        "Up to " + PreferenceAllocator.MAX_PREFERENCES + " rooms or blocks, best first, separated by commas\n"
+                                + "(a block is the start of its room numbers, e.g. R1 for R101, R102, ...)",
+                        String.join(", ", student.getRoomPreferences()));
+                if (input == null) {
+                    return;
+                }
+                List<String> preferences = new ArrayList<>();
+                for (String part : input.split(",")) {
+                    if (!part.trim().isEmpty()) {
+                        preferences.add(part.trim());
+                    }
+                }
+                try {
+                    system.setRoomPreferences(studentId, preferences);
+                    preferencesLabel.setText("Room Preferences: " + describePreferences(preferences));
+                } catch (IllegalArgumentException ex) {
+                    JOptionPane.showMessageDialog(this, ex.getMessage());
+                }
+            });
+            add(preferencesButton);
         } else {
             JLabel errorLabel = new JLabel("Student not found");
             errorLabel.setFont(new Font("Roboto", Font.PLAIN, 16));
             add(errorLabel);
         }
     }
+
+    private static String describePreferences(List<String> preferences) {
+        return preferences.isEmpty() ? "None" : String.join(", ", preferences);
+    }
+
+    private void styleButton(JButton button) {
+        button.setFont(new Font("Roboto", Font.BOLD, 16));
+        button.setBackground(new Color(38, 166, 154));
+        button.setForeground(Color.WHITE);
+        button.setBorder(BorderFactory.createEmptyBorder(10, 20, 10, 20));
+    }
 }
 
 // Student Complaint Panel
@@ -1790,7 +6230,7 @@ class StudentComplaintPanel extends JPanel {
     private HallManagementSystem system;
     private String studentId;
     private JTable complaintTable;
-    private ComplaintTableModel tableModel;
+    private StudentComplaintTableModel tableModel;
 
     public StudentComplaintPanel(HallManagementSystem system, String studentId) {
         this.system = system;
@@ -1798,7 +6238,7 @@ class StudentComplaintPanel extends JPanel {
         setLayout(new BorderLayout());
         setBackground(Color.WHITE);
 
-        tableModel = new ComplaintTableModel(system.getStudentComplaints(studentId));
+        tableModel = new StudentComplaintTableModel(system, studentId);
         complaintTable = new JTable(tableModel);
         complaintTable.setFont(new Font("Roboto", Font.PLAIN, 14));
         complaintTable.getTableHeader().setFont(new Font("Roboto", Font.BOLD, 14));
@@ -1818,10 +6258,8 @@ class StudentComplaintPanel extends JPanel {
                     JOptionPane.showMessageDialog(this, "Description cannot be empty");
                     return;
                 }
-                String complaintId = "C" + (system.getComplaints().size() + 1);
+                String complaintId = system.nextComplaintId();
                 system.submitComplaint(new Complaint(complaintId, studentId, description));
-                tableModel.setComplaints(system.getStudentComplaints(studentId));
-                tableModel.fireTableDataChanged();
                 JOptionPane.showMessageDialog(this, "Complaint submitted successfully");
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(this, "Error submitting complaint: " + ex.getMessage());
@@ -1831,6 +6269,8 @@ class StudentComplaintPanel extends JPanel {
         add(buttonPanel, BorderLayout.SOUTH);
     }
 
+    public HallSubscription getSubscription() { return tableModel.getSubscription(); }
+
     private void styleButton(JButton button) {
         button.setFont(new Font("Roboto", Font.BOLD, 16));
         button.setBackground(new Color(38, 166, 154));
@@ -1863,7 +6303,7 @@ class StudentAppointmentPanel extends JPanel {
         setLayout(new BorderLayout());
         setBackground(Color.WHITE);
 
-        tableModel = new AppointmentTableModel(system.getStudentAppointments(studentId));
+        tableModel = new AppointmentTableModel(system, studentId);
         appointmentTable = new JTable(tableModel);
         appointmentTable.setFont(new Font("Roboto", Font.PLAIN, 14));
         appointmentTable.getTableHeader().setFont(new Font("Roboto", Font.BOLD, 14));
@@ -1893,10 +6333,8 @@ class StudentAppointmentPanel extends JPanel {
                     JOptionPane.showMessageDialog(this, "Invalid time format (HH:MM)");
                     return;
                 }
-                String appointmentId = "A" + (system.getAppointments().size() + 1);
+                String appointmentId = system.nextAppointmentId();
                 system.submitAppointmentRequest(new Appointment(appointmentId, studentId, authority, date, time));
-                tableModel.setAppointments(system.getStudentAppointments(studentId));
-                tableModel.fireTableDataChanged();
                 JOptionPane.showMessageDialog(this, "Appointment request submitted successfully");
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(this, "Error submitting appointment request: " + ex.getMessage());
@@ -1917,6 +6355,8 @@ class StudentAppointmentPanel extends JPanel {
         }
     }
 
+    public HallSubscription getSubscription() { return tableModel.getSubscription(); }
+
     private void styleButton(JButton button) {
         button.setFont(new Font("Roboto", Font.BOLD, 16));
         button.setBackground(new Color(38, 166, 154));
@@ -1942,12 +6382,16 @@ class StudentPanel extends JPanel {
     private JTable studentTable;
     private StudentTableModel tableModel;
 
+    // Chosen by askAllocationSettings; a null model ranks by distance, merit and income
+    private FitPolicy allocationPolicy = FitPolicy.FIRST_FIT;
+    private ScoringModel allocationModel;
+
     public StudentPanel(HallManagementSystem system) {
         this.system = system;
         setLayout(new BorderLayout());
         setBackground(Color.WHITE);
 
-        tableModel = new StudentTableModel(system.getStudents());
+        tableModel = new StudentTableModel(system);
         studentTable = new JTable(tableModel);
         studentTable.setFont(new Font("Roboto", Font.PLAIN, 14));
         studentTable.getTableHeader().setFont(new Font("Roboto", Font.BOLD, 14));
@@ -1994,8 +6438,9 @@ class StudentPanel extends JPanel {
                     }
                     Student updatedStudent = new Student(id, name, contact, student.getDistance(), merit, student.getFatherMonthlyIncome(), department);
                     updatedStudent.setRoomNumber(student.getRoomNumber());
+                    updatedStudent.setSeatRequested(student.isSeatRequested());
+                    updatedStudent.setRoomPreferences(student.getRoomPreferences());
                     system.updateStudent(id, updatedStudent);
-                    tableModel.fireTableDataChanged();
                     JOptionPane.showMessageDialog(this, "Student updated successfully");
                 } catch (NumberFormatException ex) {
                     JOptionPane.showMessageDialog(this, "Invalid number format for merit");
@@ -2018,7 +6463,6 @@ class StudentPanel extends JPanel {
                 if (confirm == JOptionPane.YES_OPTION) {
                     String id = (String) tableModel.getValueAt(row, 0);
                     system.deleteStudent(id);
-                    tableModel.fireTableDataChanged();
                     JOptionPane.showMessageDialog(this, "Student deleted successfully");
                 }
             } else {
@@ -2031,18 +6475,157 @@ class StudentPanel extends JPanel {
         styleButton(allocateSeatsButton);
         allocateSeatsButton.addActionListener(e -> {
             try {
-                SeatAllocator.allocateSeats(system);
-                tableModel.fireTableDataChanged();
-                JOptionPane.showMessageDialog(this, "Seats allocated successfully");
+                if (!askAllocationSettings("Allocate Seats")) {
+                    return;
+                }
+                AllocationReport report = SeatAllocator.allocateSeats(system, allocationPolicy, allocationModel);
+                JOptionPane.showMessageDialog(this, "Seats allocated: " + report);
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(this, "Error allocating seats: " + ex.getMessage());
             }
         });
         buttonPanel.add(allocateSeatsButton);
 
+        // Plans on a background thread against a snapshot; the admin then commits it or drops it
+        JButton previewButton = new JButton("Preview Allocation");
+        styleButton(previewButton);
+        previewButton.addActionListener(e -> {
+            try {
+                if (!askAllocationSettings("Preview Allocation")) {
+                    return;
+                }
+            } catch (Exception ex) {
+                JOptionPane.showMessageDialog(this, "Error previewing allocation: " + ex.getMessage());
+                return;
+            }
+            FitPolicy policy = allocationPolicy;
+            ScoringModel model = allocationModel;
+            previewButton.setEnabled(false);
+            new SwingWorker<AllocationPreview, Void>() {
+                @Override
+                protected AllocationPreview doInBackground() {
+                    return SeatAllocator.preview(system, policy, model);
+                }
+
+                @Override
+                protected void done() {
+                    previewButton.setEnabled(true);
+                    try {
+                        showPreview(get());
+                    } catch (Exception ex) {
+                        Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                        JOptionPane.showMessageDialog(StudentPanel.this, "Error previewing allocation: " + cause.getMessage());
+                    }
+                }
+            }.execute();
+        });
+        buttonPanel.add(previewButton);
+
         add(buttonPanel, BorderLayout.SOUTH);
     }
 
+    // False if the admin cancels
+    private boolean askAllocationSettings(String title) {
+        FitPolicy policy = (FitPolicy) JOptionPane.showInputDialog(this, "How should rooms be filled?",
+                title, JOptionPane.QUESTION_MESSAGE, null, FitPolicy.values(), allocationPolicy);
+        if (policy == null) {
+            return false;
+        }
+        String[] rankings = {"Priority order (distance, merit, income)", "Weighted score"};
+        Object ranking = JOptionPane.showInputDialog(this, "How should students be ranked?",
+                title, JOptionPane.QUESTION_MESSAGE, null, rankings, rankings[allocationModel == null ? 0 : 1]);
+        if (ranking == null) {
+            return false;
+        }
+        ScoringModel model = null;
+        if (ranking == rankings[1]) {
+            model = askScoringModel();
+            if (model == null) {
+                return false;
+            }
+        }
+        allocationPolicy = policy;
+        allocationModel = model;
+        return true;
+    }
+
+    private void showPreview(AllocationPreview preview) {
+        List<SeatAssignment> assignments = preview.getPlan().getAssignments();
+        Object[][] rows = new Object[assignments.size()][];
+        for (int i = 0; i < rows.length; i++) {
+            SeatAssignment assignment = assignments.get(i);
+            Student student = preview.getStudent(assignment.getStudentId());
+            rows[i] = new Object[] {assignment.getStudentId(), student != null ? student.getName() : "",
+                    assignment.getRoomNumber()};
+        }
+        JTable table = new JTable(rows, new Object[] {"Student ID", "Name", "Room"});
+        table.setEnabled(false);
+        table.setDefaultRenderer(Object.class, new ModernTableCellRenderer());
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(500, 300));
+
+        JPanel summary = new JPanel(new BorderLayout(5, 5));
+        summary.add(new JLabel(preview.toString()), BorderLayout.NORTH);
+        summary.add(scrollPane, BorderLayout.CENTER);
+        List<String> emptyRooms = preview.getEmptyRooms();
+        if (!emptyRooms.isEmpty()) {
+            String shown = String.join(", ", emptyRooms.subList(0, Math.min(20, emptyRooms.size())));
+            summary.add(new JLabel("Left empty: " + shown + (emptyRooms.size() > 20 ? ", ..." : "")), BorderLayout.SOUTH);
+        }
+
+        Object[] options = {"Commit", "Discard"};
+        int choice = JOptionPane.showOptionDialog(this, summary, "Allocation Preview", JOptionPane.DEFAULT_OPTION,
+                JOptionPane.PLAIN_MESSAGE, null, options, options[1]);
+        if (choice != 0) {
+            return;
+        }
+        try {
+            // Every assignment is checked again, so a preview overtaken by later changes is refused whole
+            AllocationReport report = system.applySeatAssignments(preview.getPlan());
+            JOptionPane.showMessageDialog(this, "Seats allocated: " + report);
+        } catch (Exception ex) {
+            String changed = system.getSnapshotVersion() != preview.getSnapshotVersion()
+                    ? "Hall data changed since the preview was made. " : "";
+            JOptionPane.showMessageDialog(this, changed + "Nothing was committed: " + ex.getMessage());
+        }
+    }
+
+    // Null if the admin cancels
+    private ScoringModel askScoringModel() {
+        JTextField distanceField = new JTextField("1.0");
+        JTextField meritField = new JTextField("1.0");
+        JTextField incomeField = new JTextField("1.0");
+        JTextField quotasField = new JTextField();
+        JPanel form = new JPanel(new GridLayout(0, 2, 5, 5));
+        form.add(new JLabel("Distance weight:"));
+        form.add(distanceField);
+        form.add(new JLabel("Merit weight:"));
+        form.add(meritField);
+        form.add(new JLabel("Income weight:"));
+        form.add(incomeField);
+        form.add(new JLabel("Department quotas (e.g. CSE:40, EEE:30):"));
+        form.add(quotasField);
+        if (JOptionPane.showConfirmDialog(this, form, "Weighted Score", JOptionPane.OK_CANCEL_OPTION)
+                != JOptionPane.OK_OPTION) {
+            return null;
+        }
+        ScoringModel model = new ScoringModel(Double.parseDouble(distanceField.getText().trim()),
+                Double.parseDouble(meritField.getText().trim()), Double.parseDouble(incomeField.getText().trim()));
+        for (String quota : quotasField.getText().split(",")) {
+            if (quota.trim().isEmpty()) {
+                continue;
+            }
+            String[] parts = quota.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Quota must look like CSE:40, not " + quota.trim());
+            }
+            model.setDepartmentQuota(parts[0].trim(), Integer.parseInt(parts[1].trim()));
+        }
+        return model;
+    }
+
+    public HallSubscription getSubscription() { return tableModel.getSubscription(); }
+
     private void styleButton(JButton button) {
         button.setFont(new Font("Roboto", Font.BOLD, 16));
         button.setBackground(new Color(38, 166, 154));
@@ -2062,23 +6645,349 @@ class StudentPanel extends JPanel {
     }
 }
 
-// Student Table Model
-class StudentTableModel extends AbstractTableModel {
-    private List<Student> students;
-    private String[] columns = {"ID", "Name", "Contact", "Distance", "Merit", "Father's Income", "Room", "Department"};
-
-    public StudentTableModel(List<Student> students) {
-        this.students = students;
+// Hall Table Model
+// A table model over its own list of rows, changed only as HallManagementSystem events arrive.
+// Each event becomes an insert, update or delete of exactly the rows it touched, so the table
+// keeps its selection and repaints only those rows; updates from one delivery are fired as runs
+// of adjacent rows. Until an event arrives the table keeps showing the rows it was last told about.
+abstract class HallTableModel<T> extends AbstractTableModel {
+    private List<T> rows;
+    private Function<T, String> keyOf;
+    private Map<String, Integer> rowOfKey = new HashMap<>();
+    private TreeSet<Integer> changedRows = new TreeSet<>();
+    private HallSubscription subscription;
+
+    protected HallTableModel(HallManagementSystem system, Set<HallEventType> types, List<T> initialRows,
+                             Function<T, String> keyOf) {
+        this.keyOf = keyOf;
+        rows = new ArrayList<>(initialRows);
+        for (int i = 0; i < rows.size(); i++) {
+            rowOfKey.put(keyOf.apply(rows.get(i)), i);
+        }
+        subscription = system.subscribe(types, this::apply);
     }
 
+    protected abstract void applyEvent(HallEvent event);
+
+    // Held by the model, so the subscription lasts as long as the table does
+    public HallSubscription getSubscription() { return subscription; }
+
+    public T getRow(int row) { return rows.get(row); }
+
     @Override
-    public int getRowCount() { return students.size(); }
+    public int getRowCount() { return rows.size(); }
+
+    // Adds the row, or replaces the one with the same key; null means it was removed again
+    // before the event arrived
+    protected void insertRow(T value) {
+        if (value == null) {
+            return;
+        }
+        String key = keyOf.apply(value);
+        Integer row = rowOfKey.get(key);
+        if (row != null) {
+            updateRow(key, value);
+            return;
+        }
+        fireChangedRows();
+        rowOfKey.put(key, rows.size());
+        rows.add(value);
+        fireTableRowsInserted(rows.size() - 1, rows.size() - 1);
+    }
+
+    // A non-null value replaces the row's entity, for changes that swap it for a new object
+    protected void updateRow(String key, T value) {
+        Integer row = rowOfKey.get(key);
+        if (row == null) {
+            return;
+        }
+        if (value != null) {
+            rows.set(row, value);
+        }
+        changedRows.add(row);
+    }
+
+    protected void deleteRow(String key) {
+        Integer row = rowOfKey.remove(key);
+        if (row == null) {
+            return;
+        }
+        // Pending updates name rows by their current position, so they go out first
+        fireChangedRows();
+        rows.remove((int) row);
+        for (int i = row; i < rows.size(); i++) {
+            rowOfKey.put(keyOf.apply(rows.get(i)), i);
+        }
+        fireTableRowsDeleted(row, row);
+    }
+
+    private void apply(List<HallEvent> events) {
+        for (HallEvent event : events) {
+            applyEvent(event);
+        }
+        fireChangedRows();
+    }
+
+    private void fireChangedRows() {
+        int first = -1;
+        int last = -1;
+        for (int row : changedRows) {
+            if (row != last + 1 && first >= 0) {
+                fireTableRowsUpdated(first, last);
+                first = -1;
+            }
+            if (first < 0) {
+                first = row;
+            }
+            last = row;
+        }
+        if (first >= 0) {
+            fireTableRowsUpdated(first, last);
+        }
+        changedRows.clear();
+    }
+}
+
+// Paged Table Model
+// A table model over the snapshot version of one collection instead of a copy of it, so opening
+// one costs the same at 100 rows or 100,000. Cell values are worked out a page at a time: a page
+// is built when first painted, and the pages either side of it are built on a background thread
+// ahead of scrolling, which is safe as a snapshot version never changes. Each event delivery moves
+// the model to the latest version and fires events for just the rows that differ from the version
+// shown, found by comparing the two. A snapshot fills a deleted entity's place with its last one;
+// the table instead closes the gap and keeps every other entity on its row, so a selected row
+// never turns into a different student or complaint. New entities go at the end.
+abstract class PagedTableModel<T> extends AbstractTableModel {
+    private static final int PAGE_SIZE = 256;
+    private static final int CACHED_PAGES = 16;
+    private static final ExecutorService PREFETCHER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "table-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private HallManagementSystem system;
+    private HallCollection collection;
+    private Function<T, String> keyOf;
+    private PersistentList<T> version;
+    // Table row -> position in the version, and back; null until the first delete, while the
+    // two are the same
+    private int[] indexOfRow;
+    private int[] rowOfIndex;
+    // Built pages, least recently used first; like everything below, only touched on the event
+    // dispatch thread
+    private LinkedHashMap<Integer, Object[][]> pages = new LinkedHashMap<>(CACHED_PAGES, 0.75f, true);
+    private Set<Integer> prefetching = new HashSet<>();
+    private HallSubscription subscription;
+
+    protected PagedTableModel(HallManagementSystem system, HallCollection collection, Set<HallEventType> types,
+                              Function<T, String> keyOf) {
+        this.system = system;
+        this.collection = collection;
+        this.keyOf = keyOf;
+        version = latestVersion();
+        subscription = system.subscribe(types, events -> refresh());
+    }
+
+    // Called off the event dispatch thread as well, with rows from a snapshot
+    protected abstract Object cellValue(T row, int column);
+
+    // Held by the model, so the subscription lasts as long as the table does
+    public HallSubscription getSubscription() { return subscription; }
+
     @Override
-    public int getColumnCount() { return columns.length; }
+    public int getRowCount() { return version.size(); }
+
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        Student student = students.get(rowIndex);
-        switch (columnIndex) {
+        int index = indexOfRow == null ? rowIndex : indexOfRow[rowIndex];
+        return page(index / PAGE_SIZE)[index % PAGE_SIZE][columnIndex];
+    }
+
+    @SuppressWarnings("unchecked")
+    private PersistentList<T> latestVersion() {
+        return (PersistentList<T>) system.getSnapshot(collection).get(collection);
+    }
+
+    private void refresh() {
+        PersistentList<T> shown = version;
+        PersistentList<T> latest = latestVersion();
+        if (latest == shown) {
+            return;
+        }
+        List<Integer> changed = new ArrayList<>();
+        shown.forEachDifference(latest, changed::add);
+        int common = Math.min(shown.size(), latest.size());
+        for (int index = common; index < Math.max(shown.size(), latest.size()); index++) {
+            changed.add(index);
+        }
+        version = latest;
+        for (int index : changed) {
+            pages.remove(index / PAGE_SIZE);
+        }
+        int tailPage = common / PAGE_SIZE;
+        pages.keySet().removeIf(page -> page >= tailPage);
+
+        // Match the entities that left a changed position with those now at one: the same key
+        // means the entity was updated or moved, otherwise it was deleted or added
+        Map<String, Integer> oldIndexOf = new HashMap<>();
+        for (int index : changed) {
+            if (index < shown.size()) {
+                oldIndexOf.put(keyOf.apply(shown.get(index)), index);
+            }
+        }
+        List<int[]> kept = new ArrayList<>();
+        List<Integer> added = new ArrayList<>();
+        for (int index : changed) {
+            if (index < latest.size()) {
+                Integer oldIndex = oldIndexOf.remove(keyOf.apply(latest.get(index)));
+                if (oldIndex == null) {
+                    added.add(index);
+                } else {
+                    kept.add(new int[] {oldIndex, index});
+                }
+            }
+        }
+        boolean moved = kept.stream().anyMatch(pair -> pair[0] != pair[1]);
+        if (indexOfRow == null && oldIndexOf.isEmpty() && !moved
+                && added.stream().allMatch(index -> index >= shown.size())) {
+            // Only updates in place and additions at the end: rows and positions still agree
+            fireUpdatedRows(kept.stream().map(pair -> pair[1]).collect(Collectors.toList()));
+            if (!added.isEmpty()) {
+                fireTableRowsInserted(shown.size(), latest.size() - 1);
+            }
+            return;
+        }
+
+        if (indexOfRow == null) {
+            indexOfRow = new int[shown.size()];
+            for (int row = 0; row < indexOfRow.length; row++) {
+                indexOfRow[row] = row;
+            }
+            rowOfIndex = indexOfRow.clone();
+        }
+        int[] deletedRows = oldIndexOf.values().stream().mapToInt(index -> rowOfIndex[index]).sorted().toArray();
+        List<Integer> updatedRows = new ArrayList<>();
+        for (int[] pair : kept) {
+            indexOfRow[rowOfIndex[pair[0]]] = pair[1];
+        }
+        int[] rows = new int[shown.size() - deletedRows.length + added.size()];
+        int count = 0;
+        int nextDeleted = 0;
+        for (int row = 0; row < shown.size(); row++) {
+            if (nextDeleted < deletedRows.length && deletedRows[nextDeleted] == row) {
+                nextDeleted++;
+            } else {
+                rows[count++] = indexOfRow[row];
+            }
+        }
+        for (int index : added) {
+            rows[count++] = index;
+        }
+        indexOfRow = rows;
+        rowOfIndex = new int[latest.size()];
+        for (int row = 0; row < rows.length; row++) {
+            rowOfIndex[rows[row]] = row;
+        }
+        for (int[] pair : kept) {
+            updatedRows.add(rowOfIndex[pair[1]]);
+        }
+        Collections.sort(updatedRows);
+
+        // Highest first, so each delete names the row where the table still has it
+        for (int i = deletedRows.length - 1; i >= 0; i--) {
+            fireTableRowsDeleted(deletedRows[i], deletedRows[i]);
+        }
+        fireUpdatedRows(updatedRows);
+        if (!added.isEmpty()) {
+            fireTableRowsInserted(rows.length - added.size(), rows.length - 1);
+        }
+    }
+
+    // Fires runs of adjacent rows, given in ascending order
+    private void fireUpdatedRows(List<Integer> rows) {
+        int first = -1;
+        int last = -1;
+        for (int row : rows) {
+            if (row != last + 1 && first >= 0) {
+                fireTableRowsUpdated(first, last);
+                first = -1;
+            }
+            if (first < 0) {
+                first = row;
+            }
+            last = row;
+        }
+        if (first >= 0) {
+            fireTableRowsUpdated(first, last);
+        }
+    }
+
+    private Object[][] page(int page) {
+        Object[][] cells = pages.get(page);
+        if (cells == null) {
+            cells = buildPage(version, page);
+            store(page, cells);
+            prefetch(page - 1);
+            prefetch(page + 1);
+        }
+        return cells;
+    }
+
+    private void prefetch(int page) {
+        if (page < 0 || page * PAGE_SIZE >= version.size() || pages.containsKey(page) || !prefetching.add(page)) {
+            return;
+        }
+        PersistentList<T> rows = version;
+        PREFETCHER.execute(() -> {
+            Object[][] cells = buildPage(rows, page);
+            SwingUtilities.invokeLater(() -> {
+                prefetching.remove(page);
+                // A page built from an older version may hold rows that have changed since
+                if (version == rows && !pages.containsKey(page)) {
+                    store(page, cells);
+                }
+            });
+        });
+    }
+
+    private Object[][] buildPage(PersistentList<T> rows, int page) {
+        int from = page * PAGE_SIZE;
+        int to = Math.min(rows.size(), from + PAGE_SIZE);
+        Object[][] cells = new Object[to - from][];
+        for (int row = from; row < to; row++) {
+            T value = rows.get(row);
+            Object[] rowCells = new Object[getColumnCount()];
+            for (int column = 0; column < rowCells.length; column++) {
+                rowCells[column] = cellValue(value, column);
+            }
+            cells[row - from] = rowCells;
+        }
+        return cells;
+    }
+
+    private void store(int page, Object[][] cells) {
+        pages.put(page, cells);
+        if (pages.size() > CACHED_PAGES) {
+            Iterator<Integer> eldest = pages.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+}
+
+// Student Table Model
+class StudentTableModel extends PagedTableModel<Student> {
+    private String[] columns = {"ID", "Name", "Contact", "Distance", "Merit", "Father's Income", "Room", "Department"};
+
+    public StudentTableModel(HallManagementSystem system) {
+        super(system, HallCollection.STUDENTS, EnumSet.of(HallEventType.STUDENT_ADDED, HallEventType.STUDENT_CHANGED,
+                HallEventType.STUDENT_DELETED, HallEventType.SEAT_ASSIGNED, HallEventType.SEAT_RELEASED), Student::getId);
+    }
+
+    @Override
+    protected Object cellValue(Student student, int column) {
+        switch (column) {
             case 0: return student.getId();
             case 1: return student.getName();
             case 2: return student.getContact();
@@ -2091,6 +7000,9 @@ class StudentTableModel extends AbstractTableModel {
         }
     }
 
+    @Override
+    public int getColumnCount() { return columns.length; }
+
     @Override
     public String getColumnName(int column) { return columns[column]; }
 }
@@ -2106,7 +7018,7 @@ class RoomPanel extends JPanel {
         setLayout(new BorderLayout());
         setBackground(Color.WHITE);
 
-        tableModel = new RoomTableModel(system.getRooms());
+        tableModel = new RoomTableModel(system);
         roomTable = new JTable(tableModel);
         roomTable.setFont(new Font("Roboto", Font.PLAIN, 14));
         roomTable.getTableHeader().setFont(new Font("Roboto", Font.BOLD, 14));
@@ -2141,7 +7053,6 @@ class RoomPanel extends JPanel {
                     return;
                 }
                 system.addRoom(new Room(roomNumber, capacity));
-                tableModel.fireTableDataChanged();
                 JOptionPane.showMessageDialog(this, "Room added successfully");
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(this, "Invalid number format for capacity");
@@ -2160,7 +7071,6 @@ class RoomPanel extends JPanel {
                     try {
                         String roomNumber = (String) tableModel.getValueAt(row, 0);
                         system.deleteRoom(roomNumber);
-                        tableModel.fireTableDataChanged();
                         JOptionPane.showMessageDialog(this, "Room deleted successfully");
                     } catch (IllegalStateException ex) {
                         JOptionPane.showMessageDialog(this, ex.getMessage());
@@ -2175,6 +7085,8 @@ class RoomPanel extends JPanel {
         add(buttonPanel, BorderLayout.SOUTH);
     }
 
+    public HallSubscription getSubscription() { return tableModel.getSubscription(); }
+
     private void styleButton(JButton button) {
         button.setFont(new Font("Roboto", Font.BOLD, 16));
         button.setBackground(new Color(38, 166, 154));
@@ -2195,21 +7107,30 @@ class RoomPanel extends JPanel {
 }
 
 // Room Table Model
-class RoomTableModel extends AbstractTableModel {
-    private List<Room> rooms;
+class RoomTableModel extends HallTableModel<Room> {
+    private HallManagementSystem system;
     private String[] columns = {"Room Number", "Capacity", "Occupants"};
 
-    public RoomTableModel(List<Room> rooms) {
-        this.rooms = rooms;
+    public RoomTableModel(HallManagementSystem system) {
+        super(system, EnumSet.of(HallEventType.ROOM_ADDED, HallEventType.ROOM_DELETED,
+                HallEventType.SEAT_ASSIGNED, HallEventType.SEAT_RELEASED), system.getRooms(), Room::getRoomNumber);
+        this.system = system;
     }
 
     @Override
-    public int getRowCount() { return rooms.size(); }
+    protected void applyEvent(HallEvent event) {
+        switch (event.getType()) {
+            case ROOM_ADDED: insertRow(system.getRoom(event.getKey())); break;
+            case ROOM_DELETED: deleteRow(event.getKey()); break;
+            default: updateRow(event.getRoomNumber(), null);
+        }
+    }
+
     @Override
     public int getColumnCount() { return columns.length; }
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        Room room = rooms.get(rowIndex);
+        Room room = getRow(rowIndex);
         switch (columnIndex) {
             case 0: return room.getRoomNumber();
             case 1: return room.getCapacity();
@@ -2233,7 +7154,7 @@ class AdminComplaintPanel extends JPanel {
         setLayout(new BorderLayout());
         setBackground(Color.WHITE);
 
-        tableModel = new ComplaintTableModel(system.getComplaints());
+        tableModel = new ComplaintTableModel(system);
         complaintTable = new JTable(tableModel);
         complaintTable.setFont(new Font("Roboto", Font.PLAIN, 14));
         complaintTable.getTableHeader().setFont(new Font("Roboto", Font.BOLD, 14));
@@ -2251,13 +7172,11 @@ class AdminComplaintPanel extends JPanel {
             int row = complaintTable.getSelectedRow();
             if (row >= 0) {
                 String complaintId = (String) tableModel.getValueAt(row, 0);
-                for (Complaint c : system.getComplaints()) {
-                    if (c.getComplaintId().equals(complaintId)) {
-                        c.setResolved(true);
-                        tableModel.fireTableDataChanged();
-                        JOptionPane.showMessageDialog(this, "Complaint resolved successfully");
-                        return;
-                    }
+                try {
+                    system.resolveComplaint(complaintId);
+                    JOptionPane.showMessageDialog(this, "Complaint resolved successfully");
+                } catch (IllegalArgumentException ex) {
+                    JOptionPane.showMessageDialog(this, "Complaint not found");
                 }
             } else {
                 JOptionPane.showMessageDialog(this, "Select a complaint to resolve");
@@ -2268,6 +7187,8 @@ class AdminComplaintPanel extends JPanel {
         add(buttonPanel, BorderLayout.SOUTH);
     }
 
+    public HallSubscription getSubscription() { return tableModel.getSubscription(); }
+
     private void styleButton(JButton button) {
         button.setFont(new Font("Roboto", Font.BOLD, 16));
         button.setBackground(new Color(38, 166, 154));
@@ -2288,26 +7209,17 @@ class AdminComplaintPanel extends JPanel {
 }
 
 // Complaint Table Model
-class ComplaintTableModel extends AbstractTableModel {
-    private List<Complaint> complaints;
-    private String[] columns = {"Complaint ID", "Student ID", "Description", "Resolved"};
-
-    public ComplaintTableModel(List<Complaint> complaints) {
-        this.complaints = complaints;
-    }
+// Every complaint, paged from the snapshot
+class ComplaintTableModel extends PagedTableModel<Complaint> {
+    public static final String[] COLUMNS = {"Complaint ID", "Student ID", "Description", "Resolved"};
 
-    public void setComplaints(List<Complaint> complaints) {
-        this.complaints = complaints;
+    public ComplaintTableModel(HallManagementSystem system) {
+        super(system, HallCollection.COMPLAINTS,
+                EnumSet.of(HallEventType.COMPLAINT_SUBMITTED, HallEventType.COMPLAINT_RESOLVED), Complaint::getComplaintId);
     }
 
-    @Override
-    public int getRowCount() { return complaints.size(); }
-    @Override
-    public int getColumnCount() { return columns.length; }
-    @Override
-    public Object getValueAt(int rowIndex, int columnIndex) {
-        Complaint complaint = complaints.get(rowIndex);
-        switch (columnIndex) {
+    public static Object valueOf(Complaint complaint, int column) {
+        switch (column) {
             case 0: return complaint.getComplaintId();
             case 1: return complaint.getStudentId();
             case 2: return complaint.getDescription();
@@ -2317,7 +7229,50 @@ class ComplaintTableModel extends AbstractTableModel {
     }
 
     @Override
-    public String getColumnName(int column) { return columns[column]; }
+    protected Object cellValue(Complaint complaint, int column) { return valueOf(complaint, column); }
+
+    @Override
+    public int getColumnCount() { return COLUMNS.length; }
+
+    @Override
+    public String getColumnName(int column) { return COLUMNS[column]; }
+}
+
+// Student Complaint Table Model
+// One student's complaints, kept as rows of their own
+class StudentComplaintTableModel extends HallTableModel<Complaint> {
+    private HallManagementSystem system;
+    private String studentId;
+
+    public StudentComplaintTableModel(HallManagementSystem system, String studentId) {
+        super(system, EnumSet.of(HallEventType.COMPLAINT_SUBMITTED, HallEventType.COMPLAINT_RESOLVED),
+                system.getStudentComplaints(studentId), Complaint::getComplaintId);
+        this.system = system;
+        this.studentId = studentId;
+    }
+
+    @Override
+    protected void applyEvent(HallEvent event) {
+        Complaint complaint = system.getComplaint(event.getKey());
+        if (complaint == null || !studentId.equals(complaint.getStudentId())) {
+            return;
+        }
+        if (event.getType() == HallEventType.COMPLAINT_SUBMITTED) {
+            insertRow(complaint);
+        } else {
+            updateRow(event.getKey(), complaint);
+        }
+    }
+
+    @Override
+    public int getColumnCount() { return ComplaintTableModel.COLUMNS.length; }
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        return ComplaintTableModel.valueOf(getRow(rowIndex), columnIndex);
+    }
+
+    @Override
+    public String getColumnName(int column) { return ComplaintTableModel.COLUMNS[column]; }
 }
 
 // Admin Appointment Panel
@@ -2331,7 +7286,7 @@ class AdminAppointmentPanel extends JPanel {
         setLayout(new BorderLayout());
         setBackground(Color.WHITE);
 
-        tableModel = new AppointmentTableModel(system.getAppointments());
+        tableModel = new AppointmentTableModel(system, null);
         appointmentTable = new JTable(tableModel);
         appointmentTable.setFont(new Font("Roboto", Font.PLAIN, 14));
         appointmentTable.getTableHeader().setFont(new Font("Roboto", Font.BOLD, 14));
@@ -2351,7 +7306,6 @@ class AdminAppointmentPanel extends JPanel {
                 String appointmentId = (String) tableModel.getValueAt(row, 0);
                 try {
                     system.approveAppointment(appointmentId);
-                    tableModel.fireTableDataChanged();
                     JOptionPane.showMessageDialog(this, "Appointment approved successfully");
                 } catch (IllegalArgumentException ex) {
                     JOptionPane.showMessageDialog(this, "Appointment not found");
@@ -2369,7 +7323,6 @@ class AdminAppointmentPanel extends JPanel {
             if (row >= 0) {
                 String appointmentId = (String) tableModel.getValueAt(row, 0);
                 system.rejectAppointment(appointmentId);
-                tableModel.fireTableDataChanged();
                 JOptionPane.showMessageDialog(this, "Appointment rejected successfully");
             } else {
                 JOptionPane.showMessageDialog(this, "Select an appointment to reject");
@@ -2380,6 +7333,8 @@ class AdminAppointmentPanel extends JPanel {
         add(buttonPanel, BorderLayout.SOUTH);
     }
 
+    public HallSubscription getSubscription() { return tableModel.getSubscription(); }
+
     private void styleButton(JButton button) {
         button.setFont(new Font("Roboto", Font.BOLD, 16));
         button.setBackground(new Color(38, 166, 154));
@@ -2400,25 +7355,43 @@ class AdminAppointmentPanel extends JPanel {
 }
 
 // Appointment Table Model
-class AppointmentTableModel extends AbstractTableModel {
-    private List<Appointment> appointments;
+// Every appointment, or one student's when a student id is given
+class AppointmentTableModel extends HallTableModel<Appointment> {
+    private HallManagementSystem system;
+    private String studentId;
     private String[] columns = {"Appointment ID", "Student ID", "Authority", "Date", "Time", "Approved"};
 
-    public AppointmentTableModel(List<Appointment> appointments) {
-        this.appointments = appointments;
+    public AppointmentTableModel(HallManagementSystem system, String studentId) {
+        super(system, EnumSet.of(HallEventType.APPOINTMENT_REQUESTED, HallEventType.APPOINTMENT_APPROVED,
+                HallEventType.APPOINTMENT_REJECTED),
+                studentId == null ? system.getAppointments() : system.getStudentAppointments(studentId),
+                Appointment::getAppointmentId);
+        this.system = system;
+        this.studentId = studentId;
     }
 
-    public void setAppointments(List<Appointment> appointments) {
-        this.appointments = appointments;
+    @Override
+    protected void applyEvent(HallEvent event) {
+        if (event.getType() == HallEventType.APPOINTMENT_REJECTED) {
+            deleteRow(event.getKey());
+            return;
+        }
+        Appointment appointment = system.getAppointment(event.getKey());
+        if (appointment == null || (studentId != null && !studentId.equals(appointment.getStudentId()))) {
+            return;
+        }
+        if (event.getType() == HallEventType.APPOINTMENT_REQUESTED) {
+            insertRow(appointment);
+        } else {
+            updateRow(event.getKey(), appointment);
+        }
     }
 
-    @Override
-    public int getRowCount() { return appointments.size(); }
     @Override
     public int getColumnCount() { return columns.length; }
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        Appointment appointment = appointments.get(rowIndex);
+        Appointment appointment = getRow(rowIndex);
         switch (columnIndex) {
             case 0: return appointment.getAppointmentId();
             case 1: return appointment.getStudentId();
@@ -2439,6 +7412,8 @@ class MainGUI extends JFrame {
     public static User currentUser;
     private HallManagementSystem system;
     private JPanel mainPanel;
+    // Event subscriptions made for the signed-in user's panels, closed again on logout
+    private List<HallSubscription> sessionSubscriptions = new ArrayList<>();
 
     public MainGUI(HallManagementSystem system) {
         this.system = system;
@@ -2482,17 +7457,30 @@ class MainGUI extends JFrame {
 
         if (currentUser.getRole().equals("admin")) {
             AdminDashboardPanel dashboardPanel = new AdminDashboardPanel(system);
+            StudentPanel studentPanel = new StudentPanel(system);
+            RoomPanel roomPanel = new RoomPanel(system);
+            AdminComplaintPanel complaintPanel = new AdminComplaintPanel(system);
+            AdminAppointmentPanel appointmentPanel = new AdminAppointmentPanel(system);
             tabbedPane.addTab("Dashboard", dashboardPanel);
-            tabbedPane.addTab("Students", new StudentPanel(system));
-            tabbedPane.addTab("Rooms", new RoomPanel(system));
-            tabbedPane.addTab("Complaints", new AdminComplaintPanel(system));
-            tabbedPane.addTab("Appointments", new AdminAppointmentPanel(system));
-            system.addDashboardUpdater(dashboardPanel::updateDashboard);
+            tabbedPane.addTab("Students", studentPanel);
+            tabbedPane.addTab("Rooms", roomPanel);
+            tabbedPane.addTab("Complaints", complaintPanel);
+            tabbedPane.addTab("Appointments", appointmentPanel);
+            sessionSubscriptions.add(system.subscribe(EnumSet.allOf(HallEventType.class),
+                    events -> dashboardPanel.updateDashboard()));
+            sessionSubscriptions.add(studentPanel.getSubscription());
+            sessionSubscriptions.add(roomPanel.getSubscription());
+            sessionSubscriptions.add(complaintPanel.getSubscription());
+            sessionSubscriptions.add(appointmentPanel.getSubscription());
         } else {
             String studentId = currentUser.getUsername();
             tabbedPane.addTab("Dashboard", new StudentDashboardPanel(system, studentId));
-            tabbedPane.addTab("Submit Complaint", new StudentComplaintPanel(system, studentId));
-            tabbedPane.addTab("Request Appointment", new StudentAppointmentPanel(system, studentId));
+            StudentComplaintPanel complaintPanel = new StudentComplaintPanel(system, studentId);
+            StudentAppointmentPanel appointmentPanel = new StudentAppointmentPanel(system, studentId);
+            tabbedPane.addTab("Submit Complaint", complaintPanel);
+            tabbedPane.addTab("Request Appointment", appointmentPanel);
+            sessionSubscriptions.add(complaintPanel.getSubscription());
+            sessionSubscriptions.add(appointmentPanel.getSubscription());
             tabbedPane.addTab("Profile", new StudentProfilePanel(system, studentId));
         }
 
@@ -2517,6 +7505,8 @@ class MainGUI extends JFrame {
         });
         logoutButton.addActionListener(e -> {
             currentUser = null;
+            sessionSubscriptions.forEach(HallSubscription::close);
+            sessionSubscriptions.clear();
             showLoginPanel();
         });
         JPanel logoutPanel = new JPanel();
@@ -2530,9 +7520,8 @@ class MainGUI extends JFrame {
     }
 
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> {
-            HallManagementSystem system = new HallManagementSystem();
-            new MainGUI(system);
-        });
+        // Data loads in the background; the login screen is shown right away
+        HallManagementSystem system = new HallManagementSystem();
+        SwingUtilities.invokeLater(() -> new MainGUI(system));
     }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+// JDBC Hall Storage Check
+// Runs JdbcHallStorage against a private in-memory database: upsert of a new row, upsert of an
+// existing one, delete, and batches that roll back when a row fails, whether or not the caller
+// catches the failure. Needs a driver on the classpath; the default URL is for H2:
+//   javac -d out Main.java test/*.java && java -cp out:h2.jar JdbcHallStorageCheck [jdbcUrl]
+// Run it away from a hall's .dat files, which the first load would import. It exits with
+// status 1 on the first check that fails.
+class JdbcHallStorageCheck {
+    // Longer than the role column, so the row is refused
+    private static final String BAD_ROLE = "a role far too long for its 32 character column";
+
+    public static void main(String[] args) {
+        String url = args.length > 0 ? args[0] : "jdbc:h2:mem:hallcheck";
+        try {
+            JdbcHallStorage storage = new JdbcHallStorage(url);
+            for (HallCollection collection : HallCollection.values()) {
+                storage.load(collection);
+            }
+            run(storage);
+        } catch (SQLException | IOException | IllegalStateException e) {
+            System.err.println("JdbcHallStorage check failed: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("JdbcHallStorage check passed");
+        System.exit(0);
+    }
+
+    private static void run(JdbcHallStorage storage) throws IOException {
+        Student student = new Student("S900", "Before", "1", 10, 20, 30, "CSE");
+        storage.upsert(student);
+        expect(storage, "upsert inserts", "S900", "Before");
+
+        Student renamed = new Student("S900", "After", "1", 10, 20, 30, "CSE");
+        renamed.setRoomNumber("R101");
+        storage.upsert(renamed);
+        expect(storage, "upsert updates", "S900", "After");
+        check("upsert updates in place", students(storage).size() == 1);
+        check("upsert updates every column", "R101".equals(find(storage, "S900").getRoomNumber()));
+
+        storage.delete(HallCollection.STUDENTS, "S900");
+        check("delete removes the row", students(storage).isEmpty());
+
+        // A failing row outside a batch is reported to the caller
+        boolean thrown = false;
+        try {
+            storage.upsert(new User("bad", "x", BAD_ROLE));
+        } catch (IllegalStateException e) {
+            thrown = true;
+        }
+        check("failed upsert throws", thrown);
+
+        // The failure escapes the batch: nothing it wrote is kept
+        thrown = false;
+        try {
+            storage.batch(() -> {
+                storage.upsert(new Student("S901", "Kept?", "1", 1, 1, 1, "EEE"));
+                storage.upsert(new User("bad", "x", BAD_ROLE));
+            });
+        } catch (IllegalStateException e) {
+            thrown = true;
+        }
+        check("failed batch throws", thrown);
+        check("failed batch rolls back", find(storage, "S901") == null);
+
+        // The caller swallows the failure: the batch still rolls back, and says so at the end
+        thrown = false;
+        try {
+            storage.batch(() -> {
+                storage.upsert(new Student("S902", "Kept?", "1", 1, 1, 1, "EEE"));
+                try {
+                    storage.upsert(new User("bad", "x", BAD_ROLE));
+                } catch (IllegalStateException ignored) {
+                    // carries on as if the row had been written
+                }
+                storage.delete(HallCollection.STUDENTS, "S000");
+            });
+        } catch (IllegalStateException e) {
+            thrown = true;
+        }
+        check("batch with a caught failure throws", thrown);
+        check("batch with a caught failure rolls back", find(storage, "S902") == null);
+
+        // A clean nested batch commits everything once the outer one ends
+        storage.batch(() -> {
+            storage.upsert(new Student("S903", "One", "1", 1, 1, 1, "EEE"));
+            storage.batch(() -> storage.upsert(new Student("S904", "Two", "1", 1, 1, 1, "EEE")));
+        });
+        check("batch commits", find(storage, "S903") != null && find(storage, "S904") != null);
+    }
+
+    private static void expect(JdbcHallStorage storage, String name, String id, String studentName) throws IOException {
+        Student stored = find(storage, id);
+        check(name, stored != null && studentName.equals(stored.getName()));
+    }
+
+    private static Student find(JdbcHallStorage storage, String id) throws IOException {
+        for (Student student : students(storage)) {
+            if (student.getId().equals(id)) {
+                return student;
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Student> students(JdbcHallStorage storage) throws IOException {
+        return (List<Student>) storage.load(HallCollection.STUDENTS);
+    }
+
+    private static void check(String name, boolean passed) {
+        if (!passed) {
+            throw new IllegalStateException(name);
+        }
+    }
+}
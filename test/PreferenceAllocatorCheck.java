@@ -0,0 +1,187 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.StringJoiner;
+
+// Preference Allocator Check
+// Compares PreferenceAllocator with an exhaustive search on small halls: ties between students
+// with the same choices, preferences naming full, capacity-0 or missing rooms, more than
+// MAX_PREFERENCES choices, and random mixes. Compiled together with Main.java:
+//   javac -d out Main.java test/*.java && java -cp out PreferenceAllocatorCheck [cases] [seed]
+// It exits with status 1 on the first plan that is invalid or costs more than the best one.
+class PreferenceAllocatorCheck {
+    public static void main(String[] args) {
+        int cases = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        try {
+            runFixedCases();
+            Random random = new Random(seed);
+            for (int i = 0; i < cases; i++) {
+                check("random case " + i, randomStudents(random), randomRooms(random));
+            }
+        } catch (IllegalStateException e) {
+            System.err.println("PreferenceAllocator check failed: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("PreferenceAllocator check passed: " + (cases + 6) + " cases");
+    }
+
+    private static void runFixedCases() {
+        // Ties: everyone wants R101 and only the first in priority order gets it
+        check("tie for one room", List.of(student("S1", "R101"), student("S2", "R101"), student("S3", "R101")),
+                List.of(new Room("R101", 1), new Room("R102", 2)));
+        // Ties between interchangeable rooms of one block
+        check("tie within a block", List.of(student("S1", "R1"), student("S2", "R1"), student("S3")),
+                List.of(new Room("R101", 1), new Room("R102", 1), new Room("R201", 1)));
+        // Every preference names a room that is full, has no seats or does not exist
+        Room full = new Room("R101", 1);
+        full.addOccupant("S0");
+        check("infeasible preferences", List.of(student("S1", "R101", "R102", "R9"), student("S2", "R102")),
+                List.of(full, new Room("R102", 0), new Room("R201", 2)));
+        // Capacity-0 rooms only: nobody is placed
+        check("no seats", List.of(student("S1", "R101"), student("S2")),
+                List.of(new Room("R101", 0), new Room("R102", 0)));
+        // More students than seats: the lowest-priority ones are left over
+        check("more students than seats", List.of(student("S1"), student("S2", "R201"), student("S3", "R101")),
+                List.of(new Room("R101", 1), new Room("R201", 0), new Room("R202", 1)));
+        // Only the first MAX_PREFERENCES choices count
+        check("too many choices", List.of(student("S1", "R9", "R8", "R7", "R101"), student("S2", "R101")),
+                List.of(new Room("R101", 1), new Room("R102", 1)));
+    }
+
+    private static void check(String name, List<Student> students, List<Room> rooms) {
+        AllocationPlan plan = new PreferenceAllocator().plan(students, rooms);
+        Map<String, Integer> free = new HashMap<>();
+        int seats = 0;
+        for (Room room : rooms) {
+            int roomFree = Math.max(0, room.getCapacity() - room.getOccupants().size());
+            free.put(room.getRoomNumber(), roomFree);
+            seats += roomFree;
+        }
+        int placed = Math.min(students.size(), seats);
+        if (plan.getAssignments().size() != placed) {
+            throw new IllegalStateException(name + ": placed " + plan.getAssignments().size() + " of " + placed);
+        }
+        Map<String, String> roomOf = new HashMap<>();
+        for (SeatAssignment assignment : plan.getAssignments()) {
+            Integer left = free.get(assignment.getRoomNumber());
+            if (left == null || left == 0) {
+                throw new IllegalStateException(name + ": no free seat in " + assignment.getRoomNumber());
+            }
+            free.put(assignment.getRoomNumber(), left - 1);
+            roomOf.put(assignment.getStudentId(), assignment.getRoomNumber());
+        }
+        long cost = 0;
+        for (int i = 0; i < placed; i++) {
+            String roomNumber = roomOf.get(students.get(i).getId());
+            if (roomNumber == null) {
+                throw new IllegalStateException(name + ": " + students.get(i).getId() + " was skipped");
+            }
+            cost += cost(students.get(i), placed - i, roomNumber);
+        }
+        List<String> unplaced = new ArrayList<>();
+        for (int i = placed; i < students.size(); i++) {
+            unplaced.add(students.get(i).getId());
+        }
+        if (!plan.getUnplaced().equals(unplaced)) {
+            throw new IllegalStateException(name + ": unplaced " + plan.getUnplaced() + ", expected " + unplaced);
+        }
+        Map<String, Integer> seatsLeft = new HashMap<>();
+        for (Room room : rooms) {
+            seatsLeft.put(room.getRoomNumber(), Math.max(0, room.getCapacity() - room.getOccupants().size()));
+        }
+        long best = bestCost(students, placed, 0, rooms, seatsLeft);
+        if (cost != best) {
+            throw new IllegalStateException(name + ": plan costs " + cost + ", best is " + best
+                    + "; students " + describe(students) + ", rooms " + describeRooms(rooms));
+        }
+    }
+
+    // Same objective as the flow: missing the k-th choice costs k times the weight, no match
+    // costs MAX_PREFERENCES times it, and a student without preferences costs nothing
+    private static long cost(Student student, long weight, String roomNumber) {
+        List<String> preferences = student.getRoomPreferences();
+        int choices = Math.min(preferences.size(), PreferenceAllocator.MAX_PREFERENCES);
+        if (choices == 0) {
+            return 0;
+        }
+        for (int k = 0; k < choices; k++) {
+            if (roomNumber.startsWith(preferences.get(k))) {
+                return k * weight;
+            }
+        }
+        return PreferenceAllocator.MAX_PREFERENCES * weight;
+    }
+
+    private static long bestCost(List<Student> students, int placed, int i, List<Room> rooms, Map<String, Integer> seatsLeft) {
+        if (i == placed) {
+            return 0;
+        }
+        long best = Long.MAX_VALUE;
+        for (Room room : rooms) {
+            String roomNumber = room.getRoomNumber();
+            int left = seatsLeft.get(roomNumber);
+            if (left > 0) {
+                seatsLeft.put(roomNumber, left - 1);
+                long rest = bestCost(students, placed, i + 1, rooms, seatsLeft);
+                seatsLeft.put(roomNumber, left);
+                if (rest != Long.MAX_VALUE) {
+                    best = Math.min(best, rest + cost(students.get(i), placed - i, roomNumber));
+                }
+            }
+        }
+        return best;
+    }
+
+    private static List<Student> randomStudents(Random random) {
+        String[] choices = {"R101", "R102", "R103", "R201", "R202", "R1", "R2", "R9", "R10"};
+        List<Student> students = new ArrayList<>();
+        int count = random.nextInt(7);
+        for (int i = 0; i < count; i++) {
+            List<String> preferences = new ArrayList<>();
+            int wanted = random.nextInt(5);
+            for (int k = 0; k < wanted; k++) {
+                preferences.add(choices[random.nextInt(choices.length)]);
+            }
+            students.add(student("S" + i, preferences.toArray(new String[0])));
+        }
+        return students;
+    }
+
+    private static List<Room> randomRooms(Random random) {
+        String[] numbers = {"R101", "R102", "R103", "R201", "R202"};
+        List<Room> rooms = new ArrayList<>();
+        for (String number : numbers) {
+            if (random.nextInt(4) > 0) {
+                Room room = new Room(number, random.nextInt(3));
+                int taken = room.getCapacity() == 0 ? 0 : random.nextInt(room.getCapacity() + 1);
+                for (int i = 0; i < taken; i++) {
+                    room.addOccupant("X" + i);
+                }
+                rooms.add(room);
+            }
+        }
+        return rooms;
+    }
+
+    private static Student student(String id, String... preferences) {
+        Student student = new Student(id, id, "", 0, 0, 0, "");
+        student.setRoomPreferences(Arrays.asList(preferences));
+        return student;
+    }
+
+    private static String describe(List<Student> students) {
+        StringJoiner joiner = new StringJoiner(", ");
+        students.forEach(s -> joiner.add(s.getId() + s.getRoomPreferences()));
+        return joiner.toString();
+    }
+
+    private static String describeRooms(List<Room> rooms) {
+        StringJoiner joiner = new StringJoiner(", ");
+        rooms.forEach(r -> joiner.add(r.getRoomNumber() + " " + r.getOccupants().size() + "/" + r.getCapacity()));
+        return joiner.toString();
+    }
+}